@@ -0,0 +1,101 @@
+package org.imaginnovate.timesheet.benchmark;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Deterministic generator of raw time sheet CSVs in the layout the converter expects:
+ * {@code Emp Code, Emp Name, Project, Date, Title, Description, Total Hours}.
+ * The same settings and seed always produce the same file.
+ */
+public class TimeSheetGenerator {
+
+    private static final String HEADER = "Emp Code,Emp Name,Project,Date,Title,Description,Total Hours";
+    private static final DateTimeFormatter RAW_DATE_FORMAT = DateTimeFormatter.ofPattern("MMM dd, yyyy", Locale.ENGLISH);
+    private static final String[] WORDS = {"review", "fix", "deploy", "meeting", "design", "test", "release", "support",
+            "analysis", "planning", "refactor", "documentation"};
+    private static final String[] MINUTES = {"00", "15", "30", "45"};
+
+    private final int employees;
+    private final int days;
+    private final int entriesPerDay;
+    private final int descriptionLength;
+    private final YearMonth month;
+    private final long seed;
+
+    public TimeSheetGenerator(int employees, int days, int entriesPerDay, int descriptionLength) {
+        this(employees, days, entriesPerDay, descriptionLength, YearMonth.of(2024, 1), 42L);
+    }
+
+    public TimeSheetGenerator(int employees, int days, int entriesPerDay, int descriptionLength, YearMonth month, long seed) {
+        if (days < 1 || days > month.lengthOfMonth()) {
+            throw new IllegalArgumentException("days must be between 1 and " + month.lengthOfMonth());
+        }
+        this.employees = employees;
+        this.days = days;
+        this.entriesPerDay = entriesPerDay;
+        this.descriptionLength = descriptionLength;
+        this.month = month;
+        this.seed = seed;
+    }
+
+    public String generate() {
+        StringWriter writer = new StringWriter();
+        this.generate(writer);
+        return writer.toString();
+    }
+
+    public void generate(Writer writer) {
+        Random random = new Random(seed);
+        try {
+            writer.write(HEADER);
+            writer.write('\n');
+            for (int employee = 0; employee < employees; employee++) {
+                String code = "E" + employee;
+                String name = "Employee " + employee;
+                for (int day = 1; day <= days; day++) {
+                    LocalDate date = month.atDay(day);
+                    String hours = (6 + random.nextInt(4)) + ":" + MINUTES[random.nextInt(MINUTES.length)];
+                    for (int entry = 0; entry < entriesPerDay; entry++) {
+                        writeRow(writer, code, name, "P" + entry, date.format(RAW_DATE_FORMAT),
+                                "'Title " + random.nextInt(5), this.description(random), hours);
+                    }
+                }
+            }
+            writer.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private String description(Random random) {
+        StringBuilder description = new StringBuilder(descriptionLength + 16);
+        while (description.length() < descriptionLength) {
+            if (description.length() > 0) {
+                description.append(' ');
+            }
+            description.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        description.setLength(descriptionLength);
+        return description.toString();
+    }
+
+    private static void writeRow(Writer writer, String... fields) throws IOException {
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            writer.write('"');
+            writer.write(fields[i].replace("\"", "\"\""));
+            writer.write('"');
+        }
+        writer.write('\n');
+    }
+}
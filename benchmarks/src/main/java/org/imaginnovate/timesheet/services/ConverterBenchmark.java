@@ -0,0 +1,171 @@
+package org.imaginnovate.timesheet.services;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.imaginnovate.timesheet.benchmark.TimeSheetGenerator;
+import org.imaginnovate.timesheet.services.EmployeeSheet.DayType;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One benchmark per conversion stage, run against a synthetic time sheet. It lives in the services package so it
+ * can call the package-private stage methods of {@link ConverterService} directly.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConverterBenchmark {
+
+    private static final DateTimeFormatter RAW_DATE_FORMAT = DateTimeFormatter.ofPattern("MMM dd, yyyy", Locale.ENGLISH);
+    private static final int COLUMNS = 5;
+
+    @Param({"50", "400"})
+    public int employees;
+
+    @Param({"31"})
+    public int days;
+
+    @Param({"3"})
+    public int entriesPerDay;
+
+    @Param({"40"})
+    public int descriptionLength;
+
+    private final ConverterService converterService = new ConverterService();
+    private final DateDecoder sharedDateDecoder = new DateDecoder();
+
+    private String csv;
+    private String[] rawDates;
+    private TimeSheetTable table;
+    private List<EmployeeSheet> employeeSheets;
+    private int nextEmployeeSheet;
+
+    private XSSFWorkbook renderWorkbook;
+    private CellStylePool renderStylePool;
+    private Sheet renderSheet;
+    private Row styledRow;
+    private boolean weekend;
+
+    private XSSFWorkbook reportWorkbook;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        YearMonth month = YearMonth.of(2024, 1);
+        csv = new TimeSheetGenerator(employees, days, entriesPerDay, descriptionLength).generate();
+        rawDates = new String[days * entriesPerDay];
+        for (int i = 0; i < rawDates.length; i++) {
+            rawDates[i] = month.atDay(i / entriesPerDay + 1).format(RAW_DATE_FORMAT);
+        }
+        table = this.buildTable();
+        employeeSheets = new ArrayList<>();
+        for (int employee : table.getEmployeesByName()) {
+            employeeSheets.add(converterService.computeEmployeeSheet(table, employee));
+        }
+
+        renderWorkbook = new XSSFWorkbook();
+        renderStylePool = new CellStylePool(renderWorkbook);
+        renderSheet = renderWorkbook.createSheet("render");
+        converterService.addEachPersonSheetData(renderStylePool, employeeSheets.get(0), renderSheet, new ColumnWidthEstimator(COLUMNS));
+        styledRow = renderSheet.getRow(1);
+
+        reportWorkbook = new XSSFWorkbook();
+        CellStylePool reportStylePool = new CellStylePool(reportWorkbook);
+        for (EmployeeSheet employeeSheet : employeeSheets) {
+            converterService.addEachPersonSheetData(reportStylePool, employeeSheet, reportWorkbook.createSheet(employeeSheet.getName()),
+                    new ColumnWidthEstimator(COLUMNS));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        renderWorkbook.close();
+        reportWorkbook.close();
+    }
+
+    @Benchmark
+    public void decodeDatesCached(Blackhole blackhole) {
+        for (String rawDate : rawDates) {
+            blackhole.consume(sharedDateDecoder.decode(rawDate));
+        }
+    }
+
+    @Benchmark
+    public void decodeDatesUncached(Blackhole blackhole) {
+        DateDecoder dateDecoder = new DateDecoder();
+        for (String rawDate : rawDates) {
+            blackhole.consume(dateDecoder.decode(rawDate));
+        }
+    }
+
+    @Benchmark
+    public TimeSheetTable buildTable() throws IOException {
+        TimeSheetTable timeSheetTable = new TimeSheetTable();
+        new CsvTimeSheetReader(sharedDateDecoder).read(new StringReader(csv), timeSheetTable::add);
+        return timeSheetTable;
+    }
+
+    @Benchmark
+    public Object findAllEmployeeNames() {
+        return converterService.findAllEmployeeNames(table);
+    }
+
+    @Benchmark
+    public void computeEmployeeSheets(Blackhole blackhole) {
+        for (int employee = 0; employee < table.getEmployeeCount(); employee++) {
+            blackhole.consume(converterService.computeEmployeeSheet(table, employee));
+        }
+    }
+
+    @Benchmark
+    public Sheet addEachPersonSheetData() {
+        EmployeeSheet employeeSheet = employeeSheets.get(nextEmployeeSheet++ % employeeSheets.size());
+        converterService.addEachPersonSheetData(renderStylePool, employeeSheet, renderSheet, new ColumnWidthEstimator(COLUMNS));
+        return renderSheet;
+    }
+
+    @Benchmark
+    public Row applyStyles() {
+        weekend = !weekend;
+        converterService.updateWeekendColour(renderStylePool, styledRow, weekend ? DayType.WEEKEND : DayType.LEAVE, COLUMNS);
+        return styledRow;
+    }
+
+    @Benchmark
+    public Sheet fitColumnContent() {
+        EmployeeSheet employeeSheet = employeeSheets.get(nextEmployeeSheet++ % employeeSheets.size());
+        ColumnWidthEstimator columnWidths = new ColumnWidthEstimator(COLUMNS);
+        for (EmployeeSheet.DayRow dayRow : employeeSheet.getRows()) {
+            converterService.trackDayRow(columnWidths, employeeSheet.getName(), dayRow);
+        }
+        converterService.fitColumnContent(columnWidths, renderSheet);
+        return renderSheet;
+    }
+
+    @Benchmark
+    public void serializeWorkbook() throws IOException {
+        reportWorkbook.write(OutputStream.nullOutputStream());
+    }
+
+    @Benchmark
+    public void writeSpreadsheetML() throws IOException {
+        SpreadsheetMLWriter writer = new SpreadsheetMLWriter(OutputStream.nullOutputStream());
+        for (EmployeeSheet employeeSheet : employeeSheets) {
+            converterService.writeEmployeeSheet(writer, employeeSheet, "");
+        }
+        writer.finish();
+    }
+}
@@ -0,0 +1,12 @@
+@echo off
+rem Starts the formatter with the class-data archive recorded for this directory, recording a new one on exit
+rem after the bundle has been moved.
+setlocal
+set "DIR=%~dp0"
+set "DIR=%DIR:~0,-1%"
+set "RECORDED="
+if exist "%DIR%\timesheet.jsa.dir" set /p RECORDED=<"%DIR%\timesheet.jsa.dir"
+set "ARCHIVE=-XX:ArchiveClassesAtExit=%DIR%\timesheet.jsa"
+if exist "%DIR%\timesheet.jsa" if "%RECORDED%"=="%DIR%" set "ARCHIVE=-XX:SharedArchiveFile=%DIR%\timesheet.jsa"
+if not "%RECORDED%"=="%DIR%" (echo %DIR%)>"%DIR%\timesheet.jsa.dir"
+java "%ARCHIVE%" -Xlog:cds=off -Xlog:cds+dynamic=off %JAVA_OPTS% -jar "%DIR%\timesheet-formatter.jar" %*
@@ -1,12 +1,33 @@
 package org.imaginnovate.timesheet;
 
 import org.imaginnovate.timesheet.UI.MainWindow;
+import org.imaginnovate.timesheet.cli.BatchConverter;
+import org.imaginnovate.timesheet.server.ConversionServer;
+import org.imaginnovate.timesheet.watch.WatchFolderDaemon;
 
 import javax.swing.*;
+import java.util.Arrays;
 
 public class Main  {
 
     public static void main(String[] args) {
+        if (args.length > 0) {
+            // no window is opened outside the GUI, and POI's font handling would otherwise start AWT as for a display
+            System.setProperty("java.awt.headless", "true");
+        }
+        if (args.length > 0 && args[0].equals("--serve")) {
+            int exitCode = ConversionServer.run(Arrays.copyOfRange(args, 1, args.length));
+            if (exitCode != 0) {
+                System.exit(exitCode);
+            }
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--watch")) {
+            System.exit(WatchFolderDaemon.run(Arrays.copyOfRange(args, 1, args.length)));
+        }
+        if (args.length > 0) {
+            System.exit(BatchConverter.run(args));
+        }
         SwingUtilities.invokeLater(MainWindow::new);
     }
 
@@ -1,8 +1,11 @@
 package org.imaginnovate.timesheet.UI;
 
 import com.opencsv.CSVReader;
-import com.opencsv.exceptions.CsvValidationException;
+import com.opencsv.CSVReaderBuilder;
+import com.opencsv.RFC4180ParserBuilder;
 import org.imaginnovate.timesheet.services.FileProcessService;
+import org.imaginnovate.timesheet.services.MappedCsvTimeSheetReader;
+import org.imaginnovate.timesheet.services.XlsxTimeSheetReader;
 
 import javax.swing.*;
 import javax.swing.filechooser.FileNameExtensionFilter;
@@ -10,34 +13,50 @@ import javax.swing.table.DefaultTableModel;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.io.File;
-import java.io.FileReader;
-import java.io.IOException;
-import java.util.Collections;
-import java.util.Vector;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
 
 public class MainWindow extends JFrame {
 
-    private final DefaultTableModel tableModel;
+    private static final int LOAD_BATCH_SIZE = 10_000;
+    private static final int HELD_PREVIEW_ROW_LIMIT = 100_000;
+
+    private final JTable table;
     private final JButton formatButton;
+    private final JButton cancelLoadButton;
+    private final JLabel loadStatusLabel;
     private final FileProcessService fileProcessService = new FileProcessService();
+    private File timeSheetFile;
+    private PreviewLoader previewLoader;
 
     public MainWindow() {
         super("Time Sheet Formatter");
-        tableModel = new DefaultTableModel();
-        JTable table = new JTable(tableModel);
+        table = new JTable(new DefaultTableModel());
+        // the report is generated from the file itself, so the preview is read-only
+        table.setDefaultEditor(Object.class, null);
         JScrollPane scrollPane = new JScrollPane(table);
 
-        JButton openButton = new JButton("Open CSV File");
+        JButton openButton = new JButton("Open Time Sheet");
 
         formatButton = new JButton("Format");
         formatButton.setEnabled(false);
+        cancelLoadButton = new JButton("Cancel Loading");
+        cancelLoadButton.setEnabled(false);
+        loadStatusLabel = new JLabel(" ");
         JPanel buttonPanel = new JPanel();
 
         buttonPanel.add(openButton);
         buttonPanel.add(formatButton);
+        buttonPanel.add(cancelLoadButton);
+        buttonPanel.add(loadStatusLabel);
         formatButton.addActionListener(this::exportToExcel);
+        cancelLoadButton.addActionListener(e -> previewLoader.cancel(false));
 
-        openButton.addActionListener(this::openCsvFile);
+        openButton.addActionListener(this::openTimeSheet);
 
         JPanel panel = new JPanel(new BorderLayout());
         panel.add(buttonPanel, BorderLayout.NORTH);
@@ -64,7 +83,7 @@ public class MainWindow extends JFrame {
         }).start();
 
         new Thread(() -> {
-            boolean status  = fileProcessService.process(tableModel);
+            boolean status  = fileProcessService.process(timeSheetFile.toPath());
             dialog.dispose();
             if(status){
                 JOptionPane.showMessageDialog(this, "Time Sheet generated successfully. - " + FileProcessService.OUTPUT_FILE_PATH, "Success", JOptionPane.INFORMATION_MESSAGE);
@@ -74,40 +93,214 @@ public class MainWindow extends JFrame {
         }).start();
     }
 
-    private void openCsvFile(ActionEvent e) {
+    private void openTimeSheet(ActionEvent e) {
         JFileChooser fileChooser = new JFileChooser();
-        FileNameExtensionFilter filter = new FileNameExtensionFilter("CSV Files (*.csv)", "csv");
+        FileNameExtensionFilter filter = new FileNameExtensionFilter("Time Sheets (*.csv, *.xlsx)", "csv", "xlsx");
         fileChooser.setFileFilter(filter);
         fileChooser.setAcceptAllFileFilterUsed(false);
         int option = fileChooser.showOpenDialog(this);
         if (option == JFileChooser.APPROVE_OPTION) {
-            File csvFile = fileChooser.getSelectedFile();
-            loadCsvToTable(csvFile);
+            timeSheetFile = fileChooser.getSelectedFile();
+            loadToTable(timeSheetFile);
+        }
+    }
+
+    private void loadToTable(File file) {
+        if (previewLoader != null) {
+            previewLoader.cancel(false);
+        }
+        table.setModel(new DefaultTableModel());
+        formatButton.setEnabled(false);
+        cancelLoadButton.setEnabled(true);
+        loadStatusLabel.setText("Loading " + file.getName() + "..");
+        Charset charset = fileProcessService.getInputCharset();
+        if (XlsxTimeSheetReader.isXlsx(file.toPath())) {
+            previewLoader = new XlsxLoader(file);
+        } else if (MappedCsvTimeSheetReader.supports(charset)) {
+            previewLoader = new CsvLoader(file, charset);
+        } else {
+            // the mapped preview finds records by their ASCII bytes, which e.g. UTF-16 does not have
+            previewLoader = new StreamedCsvLoader(file, charset);
+        }
+        previewLoader.execute();
+    }
+
+    /**
+     * Reads the file off the EDT and publishes the row count after every batch, so the table fills in while the rest
+     * of the file is still being read.
+     */
+    private abstract class PreviewLoader extends SwingWorker<Integer, Integer> {
+
+        protected final File file;
+        private final long startedAt = System.nanoTime();
+
+        PreviewLoader(File file) {
+            this.file = file;
+        }
+
+        @Override
+        protected void done() {
+            if (previewLoader != this) {
+                return;
+            }
+            cancelLoadButton.setEnabled(false);
+            try {
+                get();
+                loadStatusLabel.setText(describeProgress("Loaded"));
+            } catch (CancellationException e) {
+                loadStatusLabel.setText(describeProgress("Cancelled after"));
+            } catch (InterruptedException | ExecutionException e) {
+                System.err.println("Unable to load " + file + " - " + e.getCause());
+                loadStatusLabel.setText("Loading failed");
+                JOptionPane.showMessageDialog(MainWindow.this, "Unable to read the time sheet.", "Failed", JOptionPane.ERROR_MESSAGE);
+            }
+        }
+
+        protected String describeProgress(String state) {
+            int rows = table.getRowCount();
+            double seconds = Math.max((System.nanoTime() - startedAt) / 1e9, 1e-3);
+            return String.format("%s %,d rows (%,.0f rows/s)", state, rows, rows / seconds);
+        }
+    }
+
+    private class CsvLoader extends PreviewLoader {
+
+        private final Charset charset;
+        private MappedCsvTableModel tableModel;
+
+        CsvLoader(File file, Charset charset) {
+            super(file);
+            this.charset = charset;
+        }
+
+        @Override
+        protected Integer doInBackground() throws Exception {
+            // rows are decoded from the mapped file only when the table renders them
+            MappedCsvTableModel model = new MappedCsvTableModel(file.toPath(), charset);
+            int indexedRecords = 0;
+            while (!model.isFullyIndexed() && !isCancelled()) {
+                indexedRecords = model.indexRecords(LOAD_BATCH_SIZE);
+                tableModel = model;
+                publish(indexedRecords);
+            }
+            return indexedRecords;
+        }
+
+        @Override
+        protected void process(List<Integer> chunks) {
+            if (previewLoader != this) {
+                return;
+            }
+            if (table.getModel() != tableModel) {
+                table.setModel(tableModel);
+            }
+            tableModel.showIndexedRecords(chunks.get(chunks.size() - 1));
+            formatButton.setEnabled(tableModel.getRowCount() > 0);
+            loadStatusLabel.setText(describeProgress("Loading"));
         }
     }
 
-    private void loadCsvToTable(File file) {
-        try {
-            tableModel.setRowCount(0);
-            tableModel.setColumnCount(0);
-            boolean isFirstLine = true;
-            CSVReader reader = new CSVReader(new FileReader(file.getPath()));
-            String[] lineItems;
-            while ((lineItems = reader.readNext()) != null) {
-                if (isFirstLine) {
-                    for (String col : lineItems) {
-                        tableModel.addColumn(col);
-                    }
-                    isFirstLine = false;
+    /**
+     * Streams rows into a table model holding them. Unlike the mapped CSV preview the table holds the rows it shows,
+     * so it stops after {@link #HELD_PREVIEW_ROW_LIMIT} rows; the report still covers the whole file.
+     */
+    private abstract class HeldRowsLoader extends PreviewLoader {
+
+        private final DefaultTableModel tableModel = new DefaultTableModel();
+        // read rows waiting to be added to the table on the EDT
+        private final List<String[]> readRows = new ArrayList<>();
+        private int rowCount;
+
+        HeldRowsLoader(File file) {
+            super(file);
+        }
+
+        /**
+         * Queues a row read off the EDT, the first one being the header.
+         *
+         * @return whether more rows are wanted
+         */
+        protected boolean addRow(String[] values) {
+            synchronized (readRows) {
+                readRows.add(values);
+            }
+            if (++rowCount % LOAD_BATCH_SIZE == 0) {
+                publish(rowCount);
+            }
+            return !isCancelled() && rowCount <= HELD_PREVIEW_ROW_LIMIT;
+        }
+
+        /**
+         * @return the number of rows read, once the last ones are published
+         */
+        protected int finishRows() {
+            publish(rowCount);
+            return rowCount;
+        }
+
+        @Override
+        protected void process(List<Integer> chunks) {
+            if (previewLoader != this) {
+                return;
+            }
+            List<String[]> rows;
+            synchronized (readRows) {
+                rows = new ArrayList<>(readRows);
+                readRows.clear();
+            }
+            for (String[] row : rows) {
+                if (tableModel.getColumnCount() == 0) {
+                    tableModel.setColumnIdentifiers(row);
                 } else {
-                    Vector<String> row = new Vector<>();
-                    Collections.addAll(row, lineItems);
                     tableModel.addRow(row);
                 }
             }
+            if (table.getModel() != tableModel) {
+                table.setModel(tableModel);
+            }
             formatButton.setEnabled(tableModel.getRowCount() > 0);
-        } catch (CsvValidationException | IOException e) {
-            throw new RuntimeException(e);
+            loadStatusLabel.setText(describeProgress("Loading"));
+        }
+    }
+
+    /**
+     * Streams the rows of the workbook's first sheet into the table.
+     */
+    private class XlsxLoader extends HeldRowsLoader {
+
+        XlsxLoader(File file) {
+            super(file);
+        }
+
+        @Override
+        protected Integer doInBackground() throws Exception {
+            XlsxTimeSheetReader.readRows(file.toPath(), this::addRow);
+            return this.finishRows();
+        }
+    }
+
+    /**
+     * Parses a CSV file in a charset the mapped preview cannot scan, with the same RFC 4180 quoting.
+     */
+    private class StreamedCsvLoader extends HeldRowsLoader {
+
+        private final Charset charset;
+
+        StreamedCsvLoader(File file, Charset charset) {
+            super(file);
+            this.charset = charset;
+        }
+
+        @Override
+        protected Integer doInBackground() throws Exception {
+            try (CSVReader reader = new CSVReaderBuilder(Files.newBufferedReader(file.toPath(), charset))
+                    .withCSVParser(new RFC4180ParserBuilder().build()).build()) {
+                String[] values;
+                while ((values = reader.readNext()) != null && this.addRow(values)) {
+                    // rows are queued for the table as they are read
+                }
+            }
+            return this.finishRows();
         }
     }
 }
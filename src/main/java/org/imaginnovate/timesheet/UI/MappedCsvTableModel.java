@@ -0,0 +1,194 @@
+package org.imaginnovate.timesheet.UI;
+
+import com.opencsv.ICSVParser;
+import com.opencsv.RFC4180ParserBuilder;
+import org.imaginnovate.timesheet.services.MappedCsvTimeSheetReader;
+
+import javax.swing.table.AbstractTableModel;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Read-only preview of a CSV file backed by a memory-mapped view of it. One sequential scan records where each row
+ * starts, and rows are only decoded when the table asks for them, keeping a small LRU of decoded rows.
+ * <p>
+ * The scan runs in batches through {@link #indexRecords(int)}, which may be called off the event dispatch thread;
+ * indexed rows only become visible to the table once {@link #showIndexedRecords(int)} is called on the EDT.
+ * <p>
+ * Records are found by their quote and line feed bytes, so only charsets {@link MappedCsvTimeSheetReader#supports}
+ * can be previewed this way. A UTF-8 byte order mark is skipped, as the conversion does.
+ */
+public class MappedCsvTableModel extends AbstractTableModel {
+
+    private static final long serialVersionUID = 1L;
+    private static final long SEGMENT_SIZE = 1L << 30;
+    private static final int DECODED_ROW_CACHE_SIZE = 512;
+
+    private final MappedByteBuffer[] segments;
+    private final long fileSize;
+    private final Charset charset;
+    private final ICSVParser parser = new RFC4180ParserBuilder().build();
+    private final Map<Integer, String[]> decodedRows = new LinkedHashMap<>(DECODED_ROW_CACHE_SIZE, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, String[]> eldest) {
+            return size() > DECODED_ROW_CACHE_SIZE;
+        }
+    };
+
+    // recordOffsets[i] is where record i starts, record 0 being the header, and the last entry is the end of the data.
+    // volatile because the scanning thread swaps in a bigger array while the EDT reads the published part
+    private volatile long[] recordOffsets = new long[1024];
+    private int recordCount;
+    private long scanOffset;
+    private boolean inQuotes;
+    private boolean atRecordStart = true;
+    private boolean fullyIndexed;
+    private String[] columnNames = new String[0];
+    private int visibleRecords;
+
+    /**
+     * @throws IllegalArgumentException if records of the charset cannot be found by their bytes
+     */
+    public MappedCsvTableModel(Path file, Charset charset) throws IOException {
+        if (!MappedCsvTimeSheetReader.supports(charset)) {
+            throw new IllegalArgumentException("Unable to map CSV files in " + charset);
+        }
+        this.charset = charset;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            fileSize = channel.size();
+            segments = new MappedByteBuffer[(int) ((fileSize + SEGMENT_SIZE - 1) / SEGMENT_SIZE)];
+            for (int i = 0; i < segments.length; i++) {
+                long position = i * SEGMENT_SIZE;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(SEGMENT_SIZE, fileSize - position));
+            }
+        }
+        if (charset.equals(StandardCharsets.UTF_8) && fileSize >= 3
+                && this.byteAt(0) == (byte) 0xEF && this.byteAt(1) == (byte) 0xBB && this.byteAt(2) == (byte) 0xBF) {
+            // the header starts after the byte order mark
+            scanOffset = 3;
+        }
+    }
+
+    /**
+     * Scans on from where the previous call stopped until {@code maxRecords} more records are complete or the file
+     * ends, reading the header once it is complete.
+     *
+     * @return the number of complete records so far, header included
+     */
+    public int indexRecords(int maxRecords) {
+        int target = this.getIndexedRecordCount() + maxRecords;
+        // a record is only complete once the next one has started, since that start is where it ends
+        while (scanOffset < fileSize && recordCount - 1 < target) {
+            MappedByteBuffer segment = segments[(int) (scanOffset / SEGMENT_SIZE)];
+            int limit = segment.limit();
+            for (int i = (int) (scanOffset % SEGMENT_SIZE); i < limit && recordCount - 1 < target; i++, scanOffset++) {
+                byte b = segment.get(i);
+                if (atRecordStart) {
+                    this.addRecordOffset(scanOffset);
+                    atRecordStart = false;
+                }
+                if (b == '"') {
+                    inQuotes = !inQuotes;
+                } else if (b == '\n' && !inQuotes) {
+                    atRecordStart = true;
+                }
+            }
+        }
+        if (scanOffset == fileSize && !fullyIndexed) {
+            // closing offset, so every record's end is the next record's start
+            recordOffsets[recordCount] = fileSize;
+            fullyIndexed = true;
+        }
+        if (columnNames.length == 0 && this.getIndexedRecordCount() > 0) {
+            columnNames = this.decodeRecord(0);
+        }
+        return this.getIndexedRecordCount();
+    }
+
+    public boolean isFullyIndexed() {
+        return fullyIndexed;
+    }
+
+    /**
+     * Makes the records indexed so far visible to the table. Must be called on the EDT.
+     */
+    public void showIndexedRecords(int indexedRecords) {
+        int firstNewRow = this.getRowCount();
+        visibleRecords = indexedRecords;
+        if (this.getRowCount() > firstNewRow) {
+            this.fireTableRowsInserted(firstNewRow, this.getRowCount() - 1);
+        }
+    }
+
+    private int getIndexedRecordCount() {
+        return fullyIndexed ? recordCount : Math.max(recordCount - 1, 0);
+    }
+
+    @Override
+    public int getRowCount() {
+        return Math.max(visibleRecords - 1, 0);
+    }
+
+    @Override
+    public int getColumnCount() {
+        return columnNames.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return columnNames[column];
+    }
+
+    @Override
+    public Object getValueAt(int rowIndex, int columnIndex) {
+        String[] row = decodedRows.get(rowIndex);
+        if (row == null) {
+            row = this.decodeRecord(rowIndex + 1);
+            decodedRows.put(rowIndex, row);
+        }
+        return columnIndex < row.length ? row[columnIndex] : "";
+    }
+
+    private void addRecordOffset(long offset) {
+        if (recordCount + 1 >= recordOffsets.length) {
+            recordOffsets = Arrays.copyOf(recordOffsets, recordOffsets.length * 2);
+        }
+        recordOffsets[recordCount++] = offset;
+    }
+
+    private String[] decodeRecord(int record) {
+        long[] offsets = recordOffsets;
+        long start = offsets[record];
+        long end = offsets[record + 1];
+        while (end > start && (this.byteAt(end - 1) == '\n' || this.byteAt(end - 1) == '\r')) {
+            end--;
+        }
+        byte[] bytes = new byte[(int) (end - start)];
+        int segment = (int) (start / SEGMENT_SIZE);
+        if (bytes.length == 0 || segment == (int) ((end - 1) / SEGMENT_SIZE)) {
+            segments[segment].get((int) (start % SEGMENT_SIZE), bytes);
+        } else {
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = this.byteAt(start + i);
+            }
+        }
+        try {
+            return parser.parseLine(new String(bytes, charset));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Invalid CSV record " + record, e);
+        }
+    }
+
+    private byte byteAt(long offset) {
+        return segments[(int) (offset / SEGMENT_SIZE)].get((int) (offset % SEGMENT_SIZE));
+    }
+}
@@ -0,0 +1,179 @@
+package org.imaginnovate.timesheet.cli;
+
+import org.imaginnovate.timesheet.services.ConverterService.OutputEngine;
+import org.imaginnovate.timesheet.services.FileProcessService;
+import org.imaginnovate.timesheet.services.SheetPartCache;
+import org.imaginnovate.timesheet.services.XlsxTimeSheetReader;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Headless mode converting many raw time sheets concurrently, CSV or {@code .xlsx}, one report per input file.
+ * <p>
+ * Usage: {@code <csv or xlsx file or directory>... --out <directory> [--concurrency <n>]
+ * [--cache <directory> [--cache-months <n>] [--cache-size-mb <n>]] [--metrics]} and the {@link ConversionOptions}.
+ */
+public class BatchConverter {
+
+    private static final int DEFAULT_CONCURRENCY = Runtime.getRuntime().availableProcessors();
+    private static final int DEFAULT_CACHE_MONTHS = 3;
+    private static final int DEFAULT_CACHE_SIZE_MB = 256;
+    private static final String USAGE = "Usage: <csv or xlsx file or directory>... --out <directory> [--concurrency <n>]"
+            + " [--cache <directory> [--cache-months <n>] [--cache-size-mb <n>]] [--metrics] " + ConversionOptions.FILE_USAGE;
+
+    private final List<Path> inputs = new ArrayList<>();
+    private final ConversionOptions conversionOptions = new ConversionOptions(true);
+    private FileProcessService fileProcessService;
+    private Path outputDirectory;
+    private int concurrency = DEFAULT_CONCURRENCY;
+    private Path cacheDirectory;
+    private int cacheMonths = DEFAULT_CACHE_MONTHS;
+    private int cacheSizeMb = DEFAULT_CACHE_SIZE_MB;
+    private boolean writeMetrics;
+
+    /**
+     * @return the process exit code, non zero when the arguments are invalid or any file failed to convert
+     */
+    public static int run(String[] args) {
+        BatchConverter converter = new BatchConverter();
+        try {
+            converter.parseArguments(args);
+            List<Path> files = converter.findInputFiles();
+            checkDistinctReports(files);
+            return converter.convertAll(files) == 0 ? 0 : 1;
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            return 2;
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            return 1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 1;
+        }
+    }
+
+    private void parseArguments(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            int last = conversionOptions.parse(args, i);
+            if (last >= 0) {
+                i = last;
+                continue;
+            }
+            switch (args[i]) {
+                case "--out" -> outputDirectory = Paths.get(ConversionOptions.argumentValue(args, ++i));
+                case "--concurrency" -> concurrency = ConversionOptions.intArgument(args, ++i, 1);
+                case "--metrics" -> writeMetrics = true;
+                case "--cache" -> cacheDirectory = Paths.get(ConversionOptions.argumentValue(args, ++i));
+                case "--cache-months" -> cacheMonths = ConversionOptions.intArgument(args, ++i, 1);
+                case "--cache-size-mb" -> cacheSizeMb = ConversionOptions.intArgument(args, ++i, 1);
+                default -> inputs.add(Paths.get(args[i]));
+            }
+        }
+        if (outputDirectory == null) {
+            throw new IllegalArgumentException("Missing --out <directory>");
+        }
+        if (inputs.isEmpty()) {
+            throw new IllegalArgumentException("No input files or directories given");
+        }
+        if (cacheDirectory != null && conversionOptions.getOutputEngine() != OutputEngine.SPREADSHEETML) {
+            throw new IllegalArgumentException("--cache needs --engine spreadsheetml");
+        }
+        SheetPartCache sheetCache = cacheDirectory == null
+                ? null
+                : new SheetPartCache(cacheDirectory, cacheMonths, cacheSizeMb * 1024L * 1024L);
+        fileProcessService = new FileProcessService(conversionOptions.converter().sheetCache(sheetCache).build(), writeMetrics);
+    }
+
+    private List<Path> findInputFiles() throws IOException {
+        List<Path> files = new ArrayList<>();
+        for (Path input : inputs) {
+            if (Files.isDirectory(input)) {
+                try (Stream<Path> entries = Files.list(input)) {
+                    entries.filter(BatchConverter::isTimeSheet)
+                            .filter(Files::isRegularFile)
+                            .sorted()
+                            .forEach(files::add);
+                }
+            } else if (Files.isRegularFile(input)) {
+                files.add(input);
+            } else {
+                throw new IllegalArgumentException("No such file or directory: " + input);
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Refuses inputs sharing a report, such as {@code a/jan.csv} and {@code b/jan.csv} or {@code jan.csv} and
+     * {@code jan.xlsx}, since one conversion would overwrite the other's report or delete it when failing.
+     */
+    private static void checkDistinctReports(List<Path> files) {
+        Map<String, Path> reportInputs = new HashMap<>();
+        for (Path file : files) {
+            String reportName = FileProcessService.reportName(file);
+            Path other = reportInputs.putIfAbsent(reportName, file);
+            if (other != null) {
+                throw new IllegalArgumentException("Inputs " + other + " and " + file + " would both be converted to " + reportName);
+            }
+        }
+    }
+
+    private static boolean isTimeSheet(Path file) {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        return name.endsWith(".csv") || XlsxTimeSheetReader.isXlsx(file);
+    }
+
+    /**
+     * @return the number of files that failed to convert
+     */
+    private int convertAll(List<Path> files) throws IOException, InterruptedException {
+        Files.createDirectories(outputDirectory);
+        AtomicInteger converted = new AtomicInteger();
+        AtomicInteger failures = new AtomicInteger();
+        AtomicLong rows = new AtomicLong();
+        Semaphore permits = new Semaphore(concurrency);
+        long start = System.nanoTime();
+
+        ExecutorService executor = ConversionOptions.newTaskExecutor();
+        try {
+            for (Path file : files) {
+                permits.acquire();
+                executor.execute(() -> {
+                    try {
+                        rows.addAndGet(fileProcessService.convert(file, outputDirectory.resolve(FileProcessService.reportName(file))));
+                        converted.incrementAndGet();
+                    } catch (IOException | RuntimeException e) {
+                        System.err.println("Failed to convert " + file + " - " + e.getMessage());
+                        failures.incrementAndGet();
+                    } finally {
+                        permits.release();
+                    }
+                });
+            }
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        }
+
+        double seconds = Math.max(System.nanoTime() - start, 1L) / 1_000_000_000.0;
+        System.out.printf(Locale.ROOT, "Converted %d of %d files (%d rows) in %.2f s - %.2f files/s, %.0f rows/s, %d failures%n",
+                converted.get(), files.size(), rows.get(), seconds, converted.get() / seconds, rows.get() / seconds, failures.get());
+        return failures.get();
+    }
+}
@@ -0,0 +1,205 @@
+package org.imaginnovate.timesheet.cli;
+
+import org.imaginnovate.timesheet.services.ConverterService;
+import org.imaginnovate.timesheet.services.ConverterService.Compression;
+import org.imaginnovate.timesheet.services.ConverterService.MonthLayout;
+import org.imaginnovate.timesheet.services.ConverterService.OutputEngine;
+import org.imaginnovate.timesheet.services.ConverterService.OutputFormat;
+import org.imaginnovate.timesheet.services.TimeSheetSchema;
+import org.imaginnovate.timesheet.services.WorkingDayCalendar;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.UnsupportedCharsetException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The conversion options of the command line modes, parsed and defaulted the same way in each of them. A mode reads its
+ * own options and hands every other argument to {@link #parse(String[], int)}.
+ * <p>
+ * Usage: {@code [--month-layout workbooks|sheets] [--charset <name>] [--engine poi|spreadsheetml]
+ * [--compression fast|default|max] [--format xlsx,summary-csv,days-jsonl] [--schema <file>] [--holidays <file>[,<file>...]]},
+ * the month layout and formats only in the modes writing report files.
+ */
+public class ConversionOptions {
+
+    public static final String FILE_USAGE = "[--month-layout workbooks|sheets] [--charset <name>] [--engine poi|spreadsheetml]"
+            + " [--compression fast|default|max] [--format xlsx,summary-csv,days-jsonl] [--schema <file>] [--holidays <file>[,<file>...]]";
+    public static final String STREAM_USAGE = "[--charset <name>] [--engine poi|spreadsheetml] [--compression fast|default|max]"
+            + " [--schema <file>] [--holidays <file>[,<file>...]]";
+
+    private final boolean fileOutputs;
+    private MonthLayout monthLayout = MonthLayout.WORKBOOK_PER_MONTH;
+    private Charset charset = Charset.defaultCharset();
+    private OutputEngine outputEngine = OutputEngine.POI;
+    private Compression compression = Compression.DEFAULT;
+    private EnumSet<OutputFormat> outputFormats = EnumSet.of(OutputFormat.XLSX);
+    private TimeSheetSchema schema = TimeSheetSchema.DEFAULT;
+    private WorkingDayCalendar calendar = WorkingDayCalendar.DEFAULT;
+
+    /**
+     * @param fileOutputs whether the mode writes report files, the only ones taking {@code --month-layout} and
+     *                    {@code --format}
+     */
+    public ConversionOptions(boolean fileOutputs) {
+        this.fileOutputs = fileOutputs;
+    }
+
+    /**
+     * Reads the option at {@code args[index]} and its value, if it is a conversion option.
+     *
+     * @return the index of the last argument read, {@code -1} when {@code args[index]} is not a conversion option
+     */
+    public int parse(String[] args, int index) {
+        switch (args[index]) {
+            case "--charset" -> charset = charsetArgument(args, ++index);
+            case "--engine" -> outputEngine = outputEngineArgument(args, ++index);
+            case "--compression" -> compression = compressionArgument(args, ++index);
+            case "--schema" -> schema = schemaArgument(args, ++index);
+            case "--holidays" -> calendar = holidaysArgument(args, ++index);
+            case "--month-layout" -> {
+                if (!fileOutputs) {
+                    return -1;
+                }
+                monthLayout = monthLayoutArgument(args, ++index);
+            }
+            case "--format" -> {
+                if (!fileOutputs) {
+                    return -1;
+                }
+                outputFormats = outputFormatsArgument(args, ++index);
+            }
+            default -> {
+                return -1;
+            }
+        }
+        return index;
+    }
+
+    /**
+     * @return a converter builder with these options set, the month layout and formats left to the mode when it does
+     * not write report files
+     */
+    public ConverterService.Builder converter() {
+        ConverterService.Builder builder = ConverterService.builder()
+                .inputCharset(charset)
+                .outputEngine(outputEngine)
+                .compression(compression)
+                .schema(schema)
+                .calendar(calendar);
+        if (fileOutputs) {
+            builder.monthLayout(monthLayout).outputFormats(outputFormats);
+        }
+        return builder;
+    }
+
+    public OutputEngine getOutputEngine() {
+        return outputEngine;
+    }
+
+    public static String argumentValue(String[] args, int index) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + args[index - 1]);
+        }
+        return args[index];
+    }
+
+    public static int intArgument(String[] args, int index, int minimum) {
+        int value;
+        try {
+            value = Integer.parseInt(argumentValue(args, index));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid value for " + args[index - 1] + ": " + args[index]);
+        }
+        if (value < minimum) {
+            throw new IllegalArgumentException(args[index - 1] + " must be at least " + minimum);
+        }
+        return value;
+    }
+
+    /**
+     * Runs each task on its own virtual thread when the runtime supports them (JDK 21+), falling back to platform
+     * threads otherwise. Callers bound the concurrency either way.
+     */
+    public static ExecutorService newTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    private static MonthLayout monthLayoutArgument(String[] args, int index) {
+        return switch (argumentValue(args, index)) {
+            case "workbooks" -> MonthLayout.WORKBOOK_PER_MONTH;
+            case "sheets" -> MonthLayout.SHEETS_PER_MONTH;
+            default -> throw new IllegalArgumentException("Invalid month layout: " + args[index]);
+        };
+    }
+
+    private static Charset charsetArgument(String[] args, int index) {
+        try {
+            return Charset.forName(argumentValue(args, index));
+        } catch (IllegalCharsetNameException | UnsupportedCharsetException e) {
+            throw new IllegalArgumentException("Unsupported charset: " + args[index]);
+        }
+    }
+
+    private static OutputEngine outputEngineArgument(String[] args, int index) {
+        return switch (argumentValue(args, index)) {
+            case "poi" -> OutputEngine.POI;
+            case "spreadsheetml" -> OutputEngine.SPREADSHEETML;
+            default -> throw new IllegalArgumentException("Invalid engine: " + args[index]);
+        };
+    }
+
+    private static Compression compressionArgument(String[] args, int index) {
+        return switch (argumentValue(args, index)) {
+            case "fast" -> Compression.FAST;
+            case "default" -> Compression.DEFAULT;
+            case "max" -> Compression.MAXIMUM;
+            default -> throw new IllegalArgumentException("Invalid compression: " + args[index]);
+        };
+    }
+
+    private static EnumSet<OutputFormat> outputFormatsArgument(String[] args, int index) {
+        EnumSet<OutputFormat> formats = EnumSet.noneOf(OutputFormat.class);
+        for (String format : argumentValue(args, index).split(",")) {
+            formats.add(switch (format.trim()) {
+                case "xlsx" -> OutputFormat.XLSX;
+                case "summary-csv" -> OutputFormat.SUMMARY_CSV;
+                case "days-jsonl" -> OutputFormat.DAY_JSON_LINES;
+                default -> throw new IllegalArgumentException("Invalid format: " + format);
+            });
+        }
+        return formats;
+    }
+
+    private static TimeSheetSchema schemaArgument(String[] args, int index) {
+        Path file = Paths.get(argumentValue(args, index));
+        try {
+            return TimeSheetSchema.load(file);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Unable to read schema " + file + " - " + e.getMessage());
+        }
+    }
+
+    private static WorkingDayCalendar holidaysArgument(String[] args, int index) {
+        List<Path> files = new ArrayList<>();
+        for (String file : argumentValue(args, index).split(",")) {
+            files.add(Paths.get(file.trim()));
+        }
+        try {
+            return WorkingDayCalendar.load(files);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Unable to read holidays " + args[index] + " - " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,380 @@
+package org.imaginnovate.timesheet.server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.imaginnovate.timesheet.cli.ConversionOptions;
+import org.imaginnovate.timesheet.services.ConverterService.MonthLayout;
+import org.imaginnovate.timesheet.services.ConverterService.OutputFormat;
+import org.imaginnovate.timesheet.services.FileProcessService;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.StandardCharsets;
+import java.nio.charset.UnsupportedCharsetException;
+import java.util.Locale;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Embedded HTTP mode converting time sheets for other tools. {@code POST /convert} takes a raw time sheet CSV as the
+ * request body and answers with the report, both streamed, and {@code GET /stats} reports the load and latencies.
+ * {@code POST /convert?format=summary-csv} or {@code ?format=days-jsonl} answers with the summary CSV or the day
+ * JSON Lines instead of the workbook.
+ * <p>
+ * At most {@code --max-concurrent} conversions run at once. Further requests wait up to {@code --queue-timeout}
+ * seconds for a slot, and once {@code --max-queued} of them are waiting new ones are answered 503 straight away.
+ * <p>
+ * Usage: {@code --serve [--port <n>] [--bind <address>] [--max-concurrent <n>] [--max-queued <n>]
+ * [--queue-timeout <seconds>]} and the {@link ConversionOptions} other than the month layout and formats.
+ */
+public class ConversionServer {
+
+    private static final int DEFAULT_PORT = 8080;
+    private static final String DEFAULT_BIND_ADDRESS = "127.0.0.1";
+    private static final int DEFAULT_MAX_CONCURRENT = Runtime.getRuntime().availableProcessors();
+    private static final int DEFAULT_QUEUE_TIMEOUT_SECONDS = 30;
+    private static final int LATENCY_WINDOW = 4096;
+    private static final int RESPONSE_BUFFER_SIZE = 64 * 1024;
+    private static final String REPORT_CONTENT_TYPE = "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet";
+    private static final String REPORT_FILE_NAME = "TimeSheet Report";
+    private static final String USAGE = "Usage: --serve [--port <n>] [--bind <address>] [--max-concurrent <n>] [--max-queued <n>]"
+            + " [--queue-timeout <seconds>] " + ConversionOptions.STREAM_USAGE;
+
+    private final HttpServer server;
+    private final FileProcessService fileProcessService;
+    private final int maxConcurrent;
+    private final int maxQueued;
+    private final long queueTimeoutSeconds;
+    private final Semaphore permits;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LatencyStats latencies = new LatencyStats(LATENCY_WINDOW);
+
+    /**
+     * @param maxConcurrent       conversions running at once
+     * @param maxQueued           requests waiting for a conversion slot before new ones are rejected
+     * @param queueTimeoutSeconds longest a request waits for a slot before it is rejected
+     */
+    public ConversionServer(InetSocketAddress address, FileProcessService fileProcessService, int maxConcurrent, int maxQueued,
+                            long queueTimeoutSeconds) throws IOException {
+        this.server = HttpServer.create(address, 0);
+        this.fileProcessService = fileProcessService;
+        this.maxConcurrent = maxConcurrent;
+        this.maxQueued = maxQueued;
+        this.queueTimeoutSeconds = queueTimeoutSeconds;
+        this.permits = new Semaphore(maxConcurrent, true);
+        server.createContext("/convert", exchange -> this.handle(exchange, "POST", this::convert));
+        server.createContext("/stats", exchange -> this.handle(exchange, "GET", this::stats));
+        // exchanges run on virtual threads where available, so waiting for a conversion slot costs no platform thread
+        server.setExecutor(ConversionOptions.newTaskExecutor());
+    }
+
+    /**
+     * Starts the server from the command line arguments following {@code --serve}, it keeps running once started.
+     *
+     * @return the process exit code, non zero when the arguments are invalid or the server could not start
+     */
+    public static int run(String[] args) {
+        ServerOptions options = new ServerOptions();
+        try {
+            options.parse(args);
+            // a response holds a single report, so a multi-month input gets its sheets grouped by month in it
+            FileProcessService fileProcessService = new FileProcessService(options.conversionOptions.converter()
+                    .monthLayout(MonthLayout.SHEETS_PER_MONTH)
+                    .build());
+            ConversionServer conversionServer = new ConversionServer(new InetSocketAddress(options.bindAddress, options.port),
+                    fileProcessService, options.maxConcurrent, options.maxQueued, options.queueTimeoutSeconds);
+            conversionServer.start();
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> conversionServer.stop(1)));
+            return 0;
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            return 2;
+        } catch (IOException e) {
+            System.err.println("Unable to start the conversion server - " + e.getMessage());
+            return 1;
+        }
+    }
+
+    public void start() {
+        server.start();
+        System.out.println("Conversion server listening on http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort());
+    }
+
+    /**
+     * @param delaySeconds longest time running exchanges are given to finish
+     */
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+        System.out.println("Conversion server stopped");
+    }
+
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    private void handle(HttpExchange exchange, String method, ExchangeHandler handler) throws IOException {
+        boolean aborted = false;
+        try {
+            if (!method.equals(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().set("Allow", method);
+                sendText(exchange, 405, "Use " + method + "\n");
+                return;
+            }
+            handler.handle(exchange);
+        } catch (AbortedResponseException e) {
+            // left unclosed, the server drops the connection without the chunk ending the body
+            aborted = true;
+            throw e;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Request " + exchange.getRequestURI() + " failed - " + e.getMessage());
+        } finally {
+            if (!aborted) {
+                exchange.close();
+            }
+        }
+    }
+
+    private void convert(HttpExchange exchange) throws IOException {
+        long start = System.nanoTime();
+        OutputFormat format = requestFormat(exchange);
+        if (format == null) {
+            sendText(exchange, 400, "Unknown format, use xlsx, summary-csv or days-jsonl\n");
+            return;
+        }
+        Charset charset = this.requestCharset(exchange);
+        if (charset == null) {
+            sendText(exchange, 415, "Unsupported charset in Content-Type\n");
+            return;
+        }
+        if (!this.acquireSlot()) {
+            rejected.increment();
+            exchange.getResponseHeaders().set("Retry-After", String.valueOf(queueTimeoutSeconds));
+            sendText(exchange, 503, "Too many conversions in progress, retry later\n");
+            return;
+        }
+        inFlight.incrementAndGet();
+        ReportResponse response = new ReportResponse(exchange, format);
+        try {
+            Reader csv = new BufferedReader(new InputStreamReader(exchange.getRequestBody(), charset));
+            OutputStream report = new BufferedOutputStream(response, RESPONSE_BUFFER_SIZE);
+            fileProcessService.convert(csv, report, format);
+            report.close();
+            completed.increment();
+            latencies.record(System.nanoTime() - start);
+        } catch (IOException | RuntimeException e) {
+            failed.increment();
+            System.err.println("Report generation failed! " + e.getMessage());
+            if (response.isCommitted()) {
+                // the 200 is already sent, an unterminated body tells the client the report is incomplete
+                throw new AbortedResponseException(e);
+            }
+            sendText(exchange, e instanceof IOException ? 400 : 422, "Report generation failed - " + e.getMessage() + "\n");
+        } finally {
+            inFlight.decrementAndGet();
+            permits.release();
+        }
+    }
+
+    private void stats(HttpExchange exchange) throws IOException {
+        String json = String.format(Locale.ROOT, "{%n"
+                        + "  \"inFlight\": %d,%n"
+                        + "  \"queued\": %d,%n"
+                        + "  \"maxConcurrent\": %d,%n"
+                        + "  \"maxQueued\": %d,%n"
+                        + "  \"completed\": %d,%n"
+                        + "  \"failed\": %d,%n"
+                        + "  \"rejected\": %d,%n"
+                        + "  \"latencyMillis\": %s%n"
+                        + "}%n",
+                inFlight.get(), queued.get(), maxConcurrent, maxQueued, completed.sum(), failed.sum(), rejected.sum(),
+                latencies.toJson());
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(200, body.length);
+        exchange.getResponseBody().write(body);
+    }
+
+    /**
+     * @return whether a conversion slot was taken, waiting for one unless the queue is full
+     */
+    private boolean acquireSlot() {
+        if (permits.tryAcquire()) {
+            return true;
+        }
+        if (queued.incrementAndGet() > maxQueued) {
+            queued.decrementAndGet();
+            return false;
+        }
+        try {
+            return permits.tryAcquire(queueTimeoutSeconds, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            queued.decrementAndGet();
+        }
+    }
+
+    /**
+     * @return the output format asked for by the {@code format} query parameter, the workbook when there is none and
+     * {@code null} when it is unknown
+     */
+    private static OutputFormat requestFormat(HttpExchange exchange) {
+        String query = exchange.getRequestURI().getQuery();
+        if (query != null) {
+            for (String parameter : query.split("&")) {
+                String[] nameValue = parameter.split("=", 2);
+                if (nameValue.length == 2 && nameValue[0].equals("format")) {
+                    return switch (nameValue[1]) {
+                        case "xlsx" -> OutputFormat.XLSX;
+                        case "summary-csv" -> OutputFormat.SUMMARY_CSV;
+                        case "days-jsonl" -> OutputFormat.DAY_JSON_LINES;
+                        default -> null;
+                    };
+                }
+            }
+        }
+        return OutputFormat.XLSX;
+    }
+
+    /**
+     * @return the charset of the request body, the converter's input charset when none is given and {@code null}
+     * when the given one is not supported
+     */
+    private Charset requestCharset(HttpExchange exchange) {
+        String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+        if (contentType != null) {
+            for (String parameter : contentType.split(";")) {
+                String[] nameValue = parameter.trim().split("=", 2);
+                if (nameValue.length == 2 && nameValue[0].trim().equalsIgnoreCase("charset")) {
+                    try {
+                        return Charset.forName(nameValue[1].trim().replace("\"", ""));
+                    } catch (IllegalCharsetNameException | UnsupportedCharsetException e) {
+                        return null;
+                    }
+                }
+            }
+        }
+        return fileProcessService.getInputCharset();
+    }
+
+    private static void sendText(HttpExchange exchange, int status, String message) throws IOException {
+        byte[] body = message.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        exchange.getResponseBody().write(body);
+    }
+
+    private interface ExchangeHandler {
+        void handle(HttpExchange exchange) throws IOException;
+    }
+
+    /**
+     * Thrown out of a handler whose response cannot be completed, the server then closes the connection.
+     */
+    private static class AbortedResponseException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        AbortedResponseException(Throwable cause) {
+            super("Response aborted - " + cause.getMessage(), cause);
+        }
+    }
+
+    /**
+     * Response body of a report, the 200 status and headers are only sent with its first bytes so a conversion
+     * failing before that can still answer with an error.
+     */
+    private static class ReportResponse extends OutputStream {
+
+        private final HttpExchange exchange;
+        private final OutputFormat format;
+        private OutputStream body;
+
+        ReportResponse(HttpExchange exchange, OutputFormat format) {
+            this.exchange = exchange;
+            this.format = format;
+        }
+
+        boolean isCommitted() {
+            return body != null;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            this.commit();
+            body.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            this.commit();
+            body.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (body != null) {
+                body.flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.commit();
+            body.close();
+        }
+
+        private void commit() throws IOException {
+            if (body == null) {
+                String contentType = switch (format) {
+                    case XLSX -> REPORT_CONTENT_TYPE;
+                    case SUMMARY_CSV -> "text/csv; charset=utf-8";
+                    case DAY_JSON_LINES -> "application/x-ndjson; charset=utf-8";
+                };
+                exchange.getResponseHeaders().set("Content-Type", contentType);
+                exchange.getResponseHeaders().set("Content-Disposition", "attachment; filename=\"" + REPORT_FILE_NAME + format.getFileSuffix() + "\"");
+                // chunked, the report is streamed as it is generated
+                exchange.sendResponseHeaders(200, 0);
+                body = exchange.getResponseBody();
+            }
+        }
+    }
+
+    private static class ServerOptions {
+
+        private final ConversionOptions conversionOptions = new ConversionOptions(false);
+        private int port = DEFAULT_PORT;
+        private String bindAddress = DEFAULT_BIND_ADDRESS;
+        private int maxConcurrent = DEFAULT_MAX_CONCURRENT;
+        private int maxQueued = DEFAULT_MAX_CONCURRENT * 4;
+        private int queueTimeoutSeconds = DEFAULT_QUEUE_TIMEOUT_SECONDS;
+
+        void parse(String[] args) {
+            for (int i = 0; i < args.length; i++) {
+                int last = conversionOptions.parse(args, i);
+                if (last >= 0) {
+                    i = last;
+                    continue;
+                }
+                switch (args[i]) {
+                    case "--port" -> port = ConversionOptions.intArgument(args, ++i, 0);
+                    case "--bind" -> bindAddress = ConversionOptions.argumentValue(args, ++i);
+                    case "--max-concurrent" -> maxConcurrent = ConversionOptions.intArgument(args, ++i, 1);
+                    case "--max-queued" -> maxQueued = ConversionOptions.intArgument(args, ++i, 0);
+                    case "--queue-timeout" -> queueTimeoutSeconds = ConversionOptions.intArgument(args, ++i, 0);
+                    default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package org.imaginnovate.timesheet.server;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Latencies of the most recent requests in a fixed ring, from which percentiles are computed on demand. Recording is
+ * a single array store, the sort only happens when the stats are read.
+ */
+public class LatencyStats {
+
+    private final long[] samples;
+    private long recorded;
+
+    public LatencyStats(int window) {
+        this.samples = new long[window];
+    }
+
+    public synchronized void record(long nanos) {
+        samples[(int) (recorded++ % samples.length)] = nanos;
+    }
+
+    /**
+     * @return the latency percentiles in milliseconds over the recent window as a JSON object
+     */
+    public String toJson() {
+        long[] window;
+        synchronized (this) {
+            window = Arrays.copyOf(samples, (int) Math.min(recorded, samples.length));
+        }
+        Arrays.sort(window);
+        return String.format(Locale.ROOT, "{\"samples\": %d, \"p50\": %.3f, \"p90\": %.3f, \"p99\": %.3f, \"max\": %.3f}",
+                window.length, percentile(window, 50), percentile(window, 90), percentile(window, 99), percentile(window, 100));
+    }
+
+    private static double percentile(long[] sorted, int percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        // nearest rank
+        int rank = (int) Math.ceil(percentile / 100.0 * sorted.length);
+        return sorted[Math.max(rank, 1) - 1] / 1e6;
+    }
+}
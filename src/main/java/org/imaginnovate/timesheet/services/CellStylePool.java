@@ -0,0 +1,88 @@
+package org.imaginnovate.timesheet.services;
+
+import org.apache.poi.ss.usermodel.*;
+import org.apache.poi.xssf.usermodel.XSSFColor;
+
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+
+/**
+ * Interns the cell styles and fonts of one output workbook by their attributes, so every cell with the same
+ * look shares a single style instead of each rendering step creating its own.
+ */
+public class CellStylePool {
+
+    private static final String CALI_BRI_STYLE = "Calibri";
+
+    private final Workbook workbook;
+    private final Map<StyleSpec, CellStyle> styles = new HashMap<>();
+    // keyed by style index, XSSF cells hand out a new wrapper object for the same style on every call
+    private final Map<Short, StyleSpec> specs = new HashMap<>();
+    private final Map<Boolean, Font> fonts = new HashMap<>();
+
+    public CellStylePool(Workbook workbook) {
+        this.workbook = workbook;
+    }
+
+    public CellStyle get(StyleSpec spec) {
+        CellStyle style = styles.get(spec);
+        if (style == null) {
+            style = this.createStyle(spec);
+            styles.put(spec, style);
+            specs.put(style.getIndex(), spec);
+        }
+        return style;
+    }
+
+    /**
+     * @return the pooled style that looks like {@code style} with a solid fill of the given RGB hex colour
+     */
+    public CellStyle withFill(CellStyle style, String fillColour) {
+        StyleSpec spec = specs.get(style.getIndex());
+        if (spec == null) {
+            throw new IllegalArgumentException("Cell style is not managed by this pool");
+        }
+        return this.get(spec.withFill(fillColour));
+    }
+
+    public int size() {
+        return styles.size();
+    }
+
+    private CellStyle createStyle(StyleSpec spec) {
+        CellStyle style = workbook.createCellStyle();
+        style.setFont(this.getFont(spec.bold()));
+        if (spec.bordered()) {
+            style.setBorderTop(BorderStyle.THIN);
+            style.setBorderBottom(BorderStyle.THIN);
+            style.setBorderLeft(BorderStyle.THIN);
+            style.setBorderRight(BorderStyle.THIN);
+        }
+        style.setAlignment(spec.alignment());
+        style.setVerticalAlignment(spec.verticalAlignment());
+        style.setWrapText(spec.wrapText());
+        if (spec.fillColour() != null) {
+            style.setFillForegroundColor(new XSSFColor(HexFormat.of().parseHex(spec.fillColour()), null));
+            style.setFillPattern(FillPatternType.SOLID_FOREGROUND);
+        }
+        return style;
+    }
+
+    private Font getFont(boolean bold) {
+        return fonts.computeIfAbsent(bold, key -> {
+            Font font = workbook.createFont();
+            font.setFontName(CALI_BRI_STYLE);
+            font.setBold(key);
+            return font;
+        });
+    }
+
+    public record StyleSpec(boolean bold, boolean bordered, HorizontalAlignment alignment,
+                            VerticalAlignment verticalAlignment, boolean wrapText, String fillColour) {
+
+        public StyleSpec withFill(String fillColour) {
+            return new StyleSpec(bold, bordered, alignment, verticalAlignment, wrapText, fillColour);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package org.imaginnovate.timesheet.services;
+
+import org.apache.poi.ss.usermodel.Sheet;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+
+/**
+ * Estimates the column widths autoSizeColumn would pick for the Calibri cells of a report, from advance widths
+ * cached per character instead of laying the text out through AWT. Cells are tracked as they are written, so the
+ * widths are known in the same pass and no font configuration is needed on headless machines.
+ */
+public class ColumnWidthEstimator {
+
+    // Calibri advance widths in font units (2048 per em) for the printable ASCII range, space to tilde
+    private static final int[] CALIBRI_ASCII_ADVANCES = {
+            463, 667, 821, 1038, 1038, 1464, 1397, 452, 621, 621, 1038, 1038, 511, 627, 517, 792,
+            1038, 1038, 1038, 1038, 1038, 1038, 1038, 1038, 1038, 1038, 548, 548, 1038, 1038, 1038, 941,
+            1823, 1185, 1114, 1092, 1260, 1000, 941, 1292, 1276, 516, 653, 1064, 861, 1751, 1322, 1356,
+            1058, 1378, 1112, 941, 998, 1314, 1162, 1822, 1063, 998, 959, 627, 792, 627, 1038, 1022,
+            561, 981, 1076, 866, 1076, 1019, 625, 964, 1076, 470, 490, 931, 470, 1636, 1076, 1080,
+            1076, 1076, 714, 801, 686, 1076, 925, 1464, 887, 927, 809, 640, 943, 640, 1038
+    };
+    private static final int DEFAULT_ADVANCE = 1038;
+    private static final int WIDE_ADVANCE = 2048;
+    // the width unit of a column is the advance of the digit zero in the default font
+    private static final double ZERO_ADVANCE = 1038;
+    private static final double BOLD_SCALE = 1.04;
+    private static final int MAX_COLUMN_WIDTH = 255 * 256;
+    private static final MathContext GENERAL_PRECISION = new MathContext(10);
+
+    private static final float[] REGULAR_WIDTHS = characterWidths(1.0);
+    private static final float[] BOLD_WIDTHS = characterWidths(BOLD_SCALE);
+
+    private final double[] maxWidths;
+
+    public ColumnWidthEstimator(int columns) {
+        this.maxWidths = new double[columns];
+    }
+
+    public void track(int column, String text, boolean bold) {
+        if (text == null || text.isEmpty()) {
+            return;
+        }
+        float[] widths = bold ? BOLD_WIDTHS : REGULAR_WIDTHS;
+        double lineWidth = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\n') {
+                maxWidths[column] = Math.max(maxWidths[column], lineWidth);
+                lineWidth = 0;
+            } else {
+                lineWidth += c < widths.length ? widths[c] : characterWidth(c, bold ? BOLD_SCALE : 1.0);
+            }
+        }
+        maxWidths[column] = Math.max(maxWidths[column], lineWidth);
+    }
+
+    public void track(int column, double value, boolean bold) {
+        // the General number format shows at most ten significant digits
+        this.track(column, BigDecimal.valueOf(value).round(GENERAL_PRECISION).stripTrailingZeros().toPlainString(), bold);
+    }
+
+    /**
+     * @return the estimated width of the column in 1/256th of a character, 0 if nothing was tracked in it
+     */
+    public int getWidth(int column) {
+        return (int) Math.min(Math.ceil(maxWidths[column] * 256), MAX_COLUMN_WIDTH);
+    }
+
+    public void applyTo(Sheet sheet) {
+        for (int column = 0; column < maxWidths.length; ++column) {
+            if (maxWidths[column] > 0) {
+                sheet.setColumnWidth(column, this.getWidth(column));
+            }
+        }
+    }
+
+    private static float[] characterWidths(double scale) {
+        float[] widths = new float[256];
+        for (char c = 0; c < widths.length; c++) {
+            widths[c] = (float) characterWidth(c, scale);
+        }
+        return widths;
+    }
+
+    private static double characterWidth(char c, double scale) {
+        int advance;
+        if (c >= ' ' && c - ' ' < CALIBRI_ASCII_ADVANCES.length) {
+            advance = CALIBRI_ASCII_ADVANCES[c - ' '];
+        } else if (Character.isIdeographic(c)) {
+            advance = WIDE_ADVANCE;
+        } else {
+            advance = DEFAULT_ADVANCE;
+        }
+        return advance * scale / ZERO_ADVANCE;
+    }
+}
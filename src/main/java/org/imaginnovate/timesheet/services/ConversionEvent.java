@@ -0,0 +1,53 @@
+package org.imaginnovate.timesheet.services;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event covering the conversion of one raw time sheet into its report.
+ */
+@Name("org.imaginnovate.timesheet.Conversion")
+@Label("Time Sheet Conversion")
+@Category({"Time Sheet Formatter"})
+@Description("Conversion of one raw time sheet CSV into a report")
+@StackTrace(false)
+class ConversionEvent extends jdk.jfr.Event {
+
+    @Label("Input")
+    String input;
+
+    @Label("Output")
+    String output;
+
+    @Label("Succeeded")
+    boolean succeeded;
+
+    @Label("Rows")
+    long rows;
+
+    @Label("Months")
+    long months;
+
+    @Label("Employees")
+    long employees;
+
+    @Label("Cell Styles")
+    long cellStyles;
+
+    @Label("Date Cache Hits")
+    long dateCacheHits;
+
+    @Label("Dates Parsed By Format")
+    long dateFastPathParses;
+
+    @Label("Dates Parsed By Natty")
+    long dateFallbacks;
+
+    @Label("Bytes Written")
+    @DataAmount
+    long bytesWritten;
+}
@@ -0,0 +1,248 @@
+package org.imaginnovate.timesheet.services;
+
+import jdk.jfr.FlightRecorder;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.YearMonth;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Timings and counts of one conversion. Every stage is also emitted as a {@link StageEvent} and the whole run as a
+ * {@link ConversionEvent}, so a flight recording shows them without any extra logging. Months generated in parallel
+ * add up their stage times, so stage times can exceed the elapsed time.
+ * <p>
+ * Events are only created once the flight recorder runs, loading the event classes bootstraps much of JFR, which
+ * would otherwise add to the startup of every single-file run.
+ */
+public class ConversionMetrics {
+
+    private final Map<Stage, LongAdder> stageNanos = new EnumMap<>(Stage.class);
+    private final Map<Stage, LongAdder> stageItems = new EnumMap<>(Stage.class);
+    private final LongAdder rows = new LongAdder();
+    private final LongAdder months = new LongAdder();
+    private final LongAdder employees = new LongAdder();
+    private final LongAdder cellStyles = new LongAdder();
+    private final LongAdder dateCacheHits = new LongAdder();
+    private final LongAdder dateFastPathParses = new LongAdder();
+    private final LongAdder dateFallbacks = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+    private final ConversionEvent conversionEvent = FlightRecorder.isInitialized() ? new ConversionEvent() : null;
+    private final long startedAt = System.nanoTime();
+    private long elapsedNanos;
+    private String input;
+    private String output;
+    private boolean succeeded;
+
+    public ConversionMetrics() {
+        // filled up front, so the maps are only read once the conversion runs on several threads
+        for (Stage stage : Stage.values()) {
+            stageNanos.put(stage, new LongAdder());
+            stageItems.put(stage, new LongAdder());
+        }
+        if (conversionEvent != null) {
+            conversionEvent.begin();
+        }
+    }
+
+    /**
+     * Starts timing a stage, to be closed once the stage is done.
+     *
+     * @param month month the stage works on, {@code null} when it covers the whole input
+     */
+    public Span begin(Stage stage, YearMonth month) {
+        return new Span(stage, month);
+    }
+
+    public void addRows(long count) {
+        rows.add(count);
+    }
+
+    public void addMonths(long count) {
+        months.add(count);
+    }
+
+    public void addEmployees(long count) {
+        employees.add(count);
+    }
+
+    public void addCellStyles(long count) {
+        cellStyles.add(count);
+    }
+
+    /**
+     * @param cacheHits      dates found in the decoder cache
+     * @param fastPathParses dates parsed by a known export format
+     * @param fallbacks      dates only natty understood
+     */
+    public void addDates(long cacheHits, long fastPathParses, long fallbacks) {
+        dateCacheHits.add(cacheHits);
+        dateFastPathParses.add(fastPathParses);
+        dateFallbacks.add(fallbacks);
+    }
+
+    /**
+     * @return a stream writing through to {@code outputStream} that adds every byte to the bytes written
+     */
+    public OutputStream countBytes(OutputStream outputStream) {
+        return new FilterOutputStream(outputStream) {
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
+                bytesWritten.increment();
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+                bytesWritten.add(len);
+            }
+        };
+    }
+
+    /**
+     * Ends the conversion and emits its flight recorder event.
+     */
+    public void finish(Path input, Path output, boolean succeeded) {
+        this.elapsedNanos = System.nanoTime() - startedAt;
+        this.input = String.valueOf(input);
+        this.output = String.valueOf(output);
+        this.succeeded = succeeded;
+        if (conversionEvent == null) {
+            return;
+        }
+        conversionEvent.end();
+        if (conversionEvent.shouldCommit()) {
+            conversionEvent.input = this.input;
+            conversionEvent.output = this.output;
+            conversionEvent.succeeded = succeeded;
+            conversionEvent.rows = rows.sum();
+            conversionEvent.months = months.sum();
+            conversionEvent.employees = employees.sum();
+            conversionEvent.cellStyles = cellStyles.sum();
+            conversionEvent.dateCacheHits = dateCacheHits.sum();
+            conversionEvent.dateFastPathParses = dateFastPathParses.sum();
+            conversionEvent.dateFallbacks = dateFallbacks.sum();
+            conversionEvent.bytesWritten = bytesWritten.sum();
+            conversionEvent.commit();
+        }
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten.sum();
+    }
+
+    public void writeJson(Path path) throws IOException {
+        Files.writeString(path, this.toJson(), StandardCharsets.UTF_8);
+    }
+
+    public String toJson() {
+        StringJoiner stages = new StringJoiner(", ", "{", "}");
+        for (Stage stage : Stage.values()) {
+            stages.add(String.format(Locale.ROOT, "\"%s\": {\"millis\": %.3f, \"items\": %d}",
+                    stage.label, stageNanos.get(stage).sum() / 1e6, stageItems.get(stage).sum()));
+        }
+        return String.format(Locale.ROOT, "{%n"
+                        + "  \"input\": %s,%n"
+                        + "  \"output\": %s,%n"
+                        + "  \"succeeded\": %b,%n"
+                        + "  \"elapsedMillis\": %.3f,%n"
+                        + "  \"rows\": %d,%n"
+                        + "  \"months\": %d,%n"
+                        + "  \"employees\": %d,%n"
+                        + "  \"cellStyles\": %d,%n"
+                        + "  \"dates\": {\"cacheHits\": %d, \"fastPath\": %d, \"fallbacks\": %d},%n"
+                        + "  \"bytesWritten\": %d,%n"
+                        + "  \"stages\": %s%n"
+                        + "}%n",
+                jsonString(input), jsonString(output), succeeded, elapsedNanos / 1e6, rows.sum(), months.sum(),
+                employees.sum(), cellStyles.sum(), dateCacheHits.sum(), dateFastPathParses.sum(), dateFallbacks.sum(),
+                bytesWritten.sum(), stages);
+    }
+
+    @Override
+    public String toString() {
+        StringJoiner stages = new StringJoiner(", ");
+        for (Stage stage : Stage.values()) {
+            stages.add(String.format(Locale.ROOT, "%s=%d ms", stage.label, stageNanos.get(stage).sum() / 1_000_000));
+        }
+        return stages.toString();
+    }
+
+    static String jsonString(String value) {
+        if (value == null) {
+            return "null";
+        }
+        StringBuilder json = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < ' ') {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        return json.append('"').toString();
+    }
+
+    public enum Stage {
+        PARSE("parse"),
+        AGGREGATE("aggregate"),
+        RENDER("render"),
+        SERIALIZE("serialize");
+
+        private final String label;
+
+        Stage(String label) {
+            this.label = label;
+        }
+    }
+
+    /**
+     * A running stage, recorded when closed.
+     */
+    public class Span implements AutoCloseable {
+
+        private final Stage stage;
+        private final StageEvent event = FlightRecorder.isInitialized() ? new StageEvent() : null;
+        private final long start = System.nanoTime();
+        private long items;
+
+        private Span(Stage stage, YearMonth month) {
+            this.stage = stage;
+            if (event != null) {
+                event.stage = stage.label;
+                event.month = month == null ? "" : month.toString();
+                event.begin();
+            }
+        }
+
+        public void setItems(long items) {
+            this.items = items;
+        }
+
+        @Override
+        public void close() {
+            stageNanos.get(stage).add(System.nanoTime() - start);
+            stageItems.get(stage).add(items);
+            if (event == null) {
+                return;
+            }
+            event.end();
+            if (event.shouldCommit()) {
+                event.items = items;
+                event.commit();
+            }
+        }
+    }
+}
@@ -1,592 +1,1009 @@
 package org.imaginnovate.timesheet.services;
 
-import com.joestelmach.natty.DateGroup;
-import com.joestelmach.natty.Parser;
 import org.apache.poi.ss.usermodel.*;
-import org.apache.poi.xssf.usermodel.XSSFCellStyle;
-import org.apache.poi.xssf.usermodel.XSSFColor;
-import org.apache.poi.xssf.usermodel.XSSFRow;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
-
-import java.io.ByteArrayOutputStream;
+import org.apache.poi.xssf.streaming.SXSSFSheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.imaginnovate.timesheet.services.CellStylePool.StyleSpec;
+import org.imaginnovate.timesheet.services.EmployeeSheet.DayRow;
+import org.imaginnovate.timesheet.services.EmployeeSheet.DayType;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
 import java.io.IOException;
-import java.time.DayOfWeek;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.LocalDate;
-import java.time.ZoneId;
+import java.time.YearMonth;
 import java.time.format.DateTimeFormatter;
-import java.time.format.DateTimeParseException;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.zip.Deflater;
+import java.util.stream.Collectors;
 
 
 public class ConverterService {
 
     private static final String RAW_DATE_FORMAT = "MMM dd, yyyy";
     private static final String OUT_PUT_DATE_FORMAT = "dd-MMM-yyyy";
-    private static final String CALI_BRI_STYLE = "Calibri";
-
+    private static final String GOOGLE_BLUE = "4285F4";
+    private static final String WEEKEND_GREEN = "93C47D";
+    private static final String LEAVE_CYAN = "00FFFF";
+    private static final String HOLIDAY_ORANGE = "F6B26B";
+
+    private static final StyleSpec BORDER_STYLE = new StyleSpec(false, true, HorizontalAlignment.LEFT, VerticalAlignment.CENTER, true, null);
+    private static final StyleSpec DESCRIPTION_STYLE = new StyleSpec(false, true, HorizontalAlignment.LEFT, VerticalAlignment.CENTER, false, null);
+    private static final StyleSpec HEADER_STYLE = new StyleSpec(true, true, HorizontalAlignment.CENTER, VerticalAlignment.CENTER, true, GOOGLE_BLUE);
+    private static final StyleSpec TOTAL_STYLE = new StyleSpec(true, false, HorizontalAlignment.LEFT, VerticalAlignment.BOTTOM, false, null);
+    private static final String[] SUMMARY_COLUMNS = {"Names", "Hours", "New/Existing", "Leave Days", "Utilisation %"};
+    private static final String[] EMPLOYEE_COLUMNS = {"Name", "Date", "Title", "Description", "Project Time"};
+    // widths of the name, date, title and description columns of employee sheets, the project time is fitted
+    private static final int[] FIXED_COLUMN_WIDTHS = {6400, 4352, 5120, 30720};
+
+    private final DateDecoder dateDecoder = new DateDecoder();
+    private final int rowAccessWindowSize;
+    private final ForkJoinPool computePool;
+    private final SheetPartCache sheetCache;
+    private final MonthLayout monthLayout;
+    private final Charset inputCharset;
+    private final OutputEngine outputEngine;
+    private final Compression compression;
+    private final Set<OutputFormat> outputFormats;
+    private final TimeSheetSchema schema;
+    private final WorkingDayCalendar calendar;
+
+    public ConverterService() {
+        this(builder());
+    }
 
-    public byte[] generateFromCSV(Workbook workbook) throws IOException {
-        return generate(workbook);
+    private ConverterService(Builder builder) {
+        this.rowAccessWindowSize = builder.rowAccessWindowSize;
+        this.computePool = builder.computePool;
+        this.sheetCache = builder.sheetCache;
+        this.monthLayout = builder.monthLayout;
+        this.inputCharset = builder.inputCharset;
+        this.outputEngine = builder.outputEngine;
+        this.compression = builder.compression;
+        this.outputFormats = EnumSet.copyOf(builder.outputFormats);
+        this.schema = builder.schema;
+        this.calendar = builder.calendar;
     }
 
-    private byte[] generate(Workbook inputSheet) {
-        try {
+    /**
+     * @return a builder starting from the defaults: POI's streaming workbook on the common pool, a workbook per month,
+     * the platform charset, the default schema and calendar, and only the report as output
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
 
-            Sheet sourceSheet = inputSheet.getSheetAt(0);
-            LocalDate date = this.parseDateFromCell(sourceSheet.getRow(1).getCell(3));
-            int month = date.getMonth().getValue();
-            int year = date.getYear();
-            int rowCount = sourceSheet.getPhysicalNumberOfRows();
-            System.out.println("Total rows found - " + rowCount);
-
-            // Changing the date format to match with report format
-            for (int rowIndex = 1; rowIndex < rowCount; rowIndex++) {
-                Cell dateCell = this.findDateFromSheet(sourceSheet, rowIndex);
-                String inputDate = dateCell.toString();
-                LocalDate localDate = parseDateFromCellValue(inputDate);
-                DateTimeFormatter outputFormatter = DateTimeFormatter.ofPattern(OUT_PUT_DATE_FORMAT);
-                String formattedDateStr = localDate.format(outputFormatter);
-                dateCell.setCellValue(formattedDateStr);
-            }
+    public Charset getInputCharset() {
+        return inputCharset;
+    }
 
-            TreeMap<String, Double> employeeNames = this.findAllEmployeeNames(sourceSheet);
-            Workbook outputWorkbook = new XSSFWorkbook();
-            CellStyle borderStyle = outputWorkbook.createCellStyle();
-            Font boldFont = outputWorkbook.createFont();
-            boldFont.setFontName(CALI_BRI_STYLE);
-            borderStyle.setBorderTop(BorderStyle.THIN);
-            borderStyle.setBorderBottom(BorderStyle.THIN);
-            borderStyle.setBorderLeft(BorderStyle.THIN);
-            borderStyle.setBorderRight(BorderStyle.THIN);
-            borderStyle.setFont(boldFont);
-            borderStyle.setAlignment(HorizontalAlignment.LEFT);
-            borderStyle.setVerticalAlignment(VerticalAlignment.CENTER);
-            borderStyle.setWrapText(true);
-            this.addSummaryPage(outputWorkbook, employeeNames, borderStyle);
-            this.addEachTimeSheet(outputWorkbook, employeeNames, sourceSheet, month, year, borderStyle);
-            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-            outputWorkbook.write(outputStream);
-            return outputStream.toByteArray();
-        } catch (Exception var15) {
-            System.out.println(var15.getMessage());
-            return null;
-        }
-    }
-
-
-    private LocalDate parseDateFromCell(Cell cell) {
-        if (cell == null) {
-            return null;
-        } else {
-            return getLocalDate(cell.getStringCellValue());
-        }
+    /**
+     * Converts a raw time sheet, a CSV file or the first sheet of an {@code .xlsx} workbook, into a report at
+     * {@code outputPath}. With {@link MonthLayout#WORKBOOK_PER_MONTH}, an input spanning several months is written to
+     * one {@code <report>-yyyy-MM.xlsx} per month next to it instead.
+     * The summary CSV and day JSON Lines outputs go to {@code <report>.summary.csv} and {@code <report>.days.jsonl}.
+     *
+     * @return the number of time sheet rows converted
+     */
+    public int generateFromCSV(Path csvPath, Path outputPath) throws IOException {
+        return this.generateFromCSV(csvPath, outputPath, new ConversionMetrics());
     }
 
-    private LocalDate parseDateFromCellValue(String cellValue) {
-        if (cellValue == null) {
-            return null;
+    /**
+     * @param metrics collects the stage timings and counts of this conversion
+     * @return the number of time sheet rows converted
+     */
+    public int generateFromCSV(Path csvPath, Path outputPath, ConversionMetrics metrics) throws IOException {
+        List<TimeSheetTable> months;
+        if (XlsxTimeSheetReader.isXlsx(csvPath)) {
+            months = this.readMonths((dates, consumer) -> new XlsxTimeSheetReader(dates, schema).read(csvPath, consumer), metrics);
+        } else if (MappedCsvTimeSheetReader.supports(inputCharset)) {
+            // large exports are tokenized in parallel straight from the mapped file
+            months = this.readMonths((dates, consumer) -> new MappedCsvTimeSheetReader(dates, schema, inputCharset, computePool)
+                    .read(csvPath, consumer), metrics);
         } else {
-            return getLocalDate(cellValue);
-        }
-    }
-
-    private static LocalDate getLocalDate(String input) {
-        Parser parser = new Parser();
-        List<DateGroup> groups = parser.parse(input);
-        Date date = groups.get(0).getDates().get(0);
-        return date.toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
-    }
-
-    private void addSummaryPage(Workbook outputWorkbook, Map<String, Double> employeeNames, CellStyle borderStyle) {
-        Sheet outputSheet = outputWorkbook.createSheet("Summary");
-        String[] summaryColumns = new String[]{"Names", "Hours", "New/Existing"};
-        CellStyle totalStyle = outputWorkbook.createCellStyle();
-        totalStyle.setAlignment(HorizontalAlignment.LEFT);
-        Font boldFont = outputWorkbook.createFont();
-        boldFont.setFontName(CALI_BRI_STYLE);
-        boldFont.setBold(true);
-        totalStyle.setFont(boldFont);
-        this.addColumns(summaryColumns, outputSheet);
-        this.fillSummarySheet(outputSheet, employeeNames);
-        this.fitColumnContent(summaryColumns.length, outputSheet);
-        this.addBorders(outputSheet, borderStyle, summaryColumns.length);
-        byte[] googleBlueRGB = new byte[]{66, -123, -12};
-        XSSFColor xssfColor = new XSSFColor(googleBlueRGB, null);
-        this.applyColourFontOnColumns(outputWorkbook, outputSheet, summaryColumns.length, xssfColor);
-        int lastRowNum = outputSheet.getLastRowNum();
-        Row lastRow = outputSheet.getRow(lastRowNum);
-        if (lastRow != null) {
-            for (int col = 0; col < summaryColumns.length; ++col) {
-                Cell cell = lastRow.getCell(col);
-                if (cell == null) {
-                    cell = lastRow.createCell(col);
+            try (Reader reader = Files.newBufferedReader(csvPath, inputCharset)) {
+                months = this.readMonths((dates, consumer) -> new CsvTimeSheetReader(dates, schema).read(reader, consumer), metrics);
+            }
+        }
+        List<MonthAggregate> aggregates = this.aggregate(months, metrics);
+        if (outputFormats.contains(OutputFormat.XLSX)) {
+            if (months.size() > 1 && monthLayout == MonthLayout.WORKBOOK_PER_MONTH) {
+                this.generateMonthWorkbooks(aggregates, outputPath, metrics);
+            } else {
+                try (OutputStream outputStream = new BufferedOutputStream(metrics.countBytes(Files.newOutputStream(outputPath)))) {
+                    this.generate(aggregates, outputStream, metrics);
                 }
-
-                cell.setCellStyle(totalStyle);
             }
         }
-
+        for (OutputFormat format : outputFormats) {
+            if (format != OutputFormat.XLSX) {
+                this.writeTextOutput(aggregates, siblingPath(outputPath, format.suffix), format, metrics);
+            }
+        }
+        this.evictCachedMonths(months);
+        return months.stream().mapToInt(TimeSheetTable::getRowCount).sum();
     }
 
-    private void addEachTimeSheet(Workbook outputWorkbook, Map<String, Double> employeeNames, Sheet sourceSheet, int month, int year, CellStyle style) {
-        String[] columns = new String[]{"Name", "Date", "Title", "Description", "Project Time"};
+    /**
+     * Converts a raw time sheet into a single report, an input spanning several months gets a group of sheets per month.
+     *
+     * @return the number of time sheet rows converted
+     */
+    public int generateFromCSV(Reader reader, OutputStream outputStream) throws IOException {
+        return this.generateFromCSV(reader, outputStream, new ConversionMetrics());
+    }
 
-        for (String name : employeeNames.keySet()) {
-            Sheet currentSheet = outputWorkbook.createSheet(name);
-            this.addColumns(columns, currentSheet);
-            currentSheet.setColumnWidth(3, 12800);
-            this.addEachPersonSheetData(style, sourceSheet, currentSheet, name, month, year);
-            this.fitColumnContent(columns.length, currentSheet);
-            this.addBorders(currentSheet, style, columns.length);
-            byte[] googleBlueRGB = new byte[]{66, -123, -12};
-            XSSFColor xssfColor = new XSSFColor(googleBlueRGB, null);
-            this.applyColourFontOnColumns(outputWorkbook, currentSheet, columns.length, xssfColor);
-            this.updateWeekendColour(outputWorkbook, currentSheet, columns.length);
-            int lastRowNum = currentSheet.getLastRowNum();
-            currentSheet.createRow(lastRowNum + 1);
-            double totalHours = 0.0;
-
-            for (int i = 1; i <= lastRowNum; ++i) {
-                Row row = currentSheet.getRow(i);
-                if (row != null) {
-                    Cell hoursCell = row.getCell(4);
-                    if (hoursCell != null) {
-                        String value = hoursCell.toString();
-
-                        try {
-                            totalHours += value.isEmpty() ? 0.0 : Double.parseDouble(value);
-                        } catch (NumberFormatException var23) {
-                            System.out.println(var23.getMessage());
-                        }
-                    }
-                }
-            }
+    /**
+     * @param metrics collects the stage timings and counts of this conversion
+     * @return the number of time sheet rows converted
+     */
+    public int generateFromCSV(Reader reader, OutputStream outputStream, ConversionMetrics metrics) throws IOException {
+        return this.generateFromCSV(reader, outputStream, metrics, OutputFormat.XLSX);
+    }
 
-            CellStyle totalStyle = outputWorkbook.createCellStyle();
-            totalStyle.setAlignment(HorizontalAlignment.LEFT);
-            Font boldFont = outputWorkbook.createFont();
-            boldFont.setBold(true);
-            totalStyle.setFont(boldFont);
-            Row totalRow = currentSheet.createRow(lastRowNum + 2);
-            Cell labelCell = totalRow.createCell(0);
-            labelCell.setCellValue("Total");
-            Cell totalCell = totalRow.createCell(4);
-            totalCell.setCellValue(totalHours);
+    /**
+     * Converts a raw time sheet into a single output of the given format, whatever formats this converter writes to files.
+     *
+     * @return the number of time sheet rows converted
+     */
+    public int generateFromCSV(Reader reader, OutputStream outputStream, ConversionMetrics metrics, OutputFormat format) throws IOException {
+        List<TimeSheetTable> months = this.readMonths((dates, consumer) -> new CsvTimeSheetReader(dates, schema).read(reader, consumer), metrics);
+        List<MonthAggregate> aggregates = this.aggregate(months, metrics);
+        if (format == OutputFormat.XLSX) {
+            this.generate(aggregates, metrics.countBytes(outputStream), metrics);
+        } else {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(metrics.countBytes(outputStream), StandardCharsets.UTF_8));
+            this.writeText(aggregates, writer, format, metrics);
+            writer.flush();
+        }
+        this.evictCachedMonths(months);
+        return months.stream().mapToInt(TimeSheetTable::getRowCount).sum();
+    }
 
-            for (int col = 0; col < columns.length; ++col) {
-                Cell cell = totalRow.getCell(col);
-                if (cell == null) {
-                    cell = totalRow.createCell(col);
-                }
+    /**
+     * @return the rows of the time sheet partitioned by month, in month order
+     */
+    private List<TimeSheetTable> readMonths(RowSource rowSource, ConversionMetrics metrics) throws IOException {
+        TreeMap<YearMonth, TimeSheetTable> months = new TreeMap<>();
+        // counts the dates of this conversion alone, whatever else the shared cache decodes meanwhile
+        DateDecoder dates = dateDecoder.forConversion();
+        int rowCount;
+        try (ConversionMetrics.Span span = metrics.begin(ConversionMetrics.Stage.PARSE, null)) {
+            rowSource.read(dates, row -> months.computeIfAbsent(YearMonth.from(row.date()), month -> new TimeSheetTable()).add(row));
+            rowCount = months.values().stream().mapToInt(TimeSheetTable::getRowCount).sum();
+            span.setItems(rowCount);
+        }
+        metrics.addRows(rowCount);
+        metrics.addMonths(months.size());
+        metrics.addDates(dates.getHits(), dates.getFastPathParses(), dates.getFallbacks());
+        System.out.println("Total rows found - " + rowCount);
+        if (months.size() > 1) {
+            System.out.println("Months found - " + months.size());
+        }
+        return months.isEmpty() ? List.of(new TimeSheetTable()) : new ArrayList<>(months.values());
+    }
 
-                cell.setCellStyle(totalStyle);
+    /**
+     * @return the summary totals and employee sheets of every month
+     */
+    private List<MonthAggregate> aggregate(List<TimeSheetTable> months, ConversionMetrics metrics) {
+        List<MonthAggregate> aggregates = new ArrayList<>(months.size());
+        for (TimeSheetTable table : months) {
+            try (ConversionMetrics.Span span = metrics.begin(ConversionMetrics.Stage.AGGREGATE, table.getMonth())) {
+                List<EmployeeSheet> employeeSheets = this.computeEmployeeSheets(table);
+                WorkingDayCalendar.MonthDays days = table.getMonth() == null
+                        ? WorkingDayCalendar.MonthDays.NONE
+                        : calendar.month(table.getMonth());
+                aggregates.add(new MonthAggregate(table, days, this.findAllEmployeeNames(table), employeeSheets));
+                span.setItems(employeeSheets.size());
+                metrics.addEmployees(employeeSheets.size());
             }
         }
+        return aggregates;
+    }
 
+    private void writeTextOutput(List<MonthAggregate> months, Path path, OutputFormat format, ConversionMetrics metrics) throws IOException {
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(metrics.countBytes(Files.newOutputStream(path)), StandardCharsets.UTF_8))) {
+            this.writeText(months, writer, format, metrics);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(path);
+            throw e;
+        }
+        System.out.println(format.label + " written - " + path);
     }
 
-    private void addBorders(Sheet sheet, CellStyle style, int totalColumns) {
+    private void writeText(List<MonthAggregate> months, Writer writer, OutputFormat format, ConversionMetrics metrics) throws IOException {
+        try (ConversionMetrics.Span span = metrics.begin(ConversionMetrics.Stage.SERIALIZE, months.size() == 1 ? months.get(0).table().getMonth() : null)) {
+            span.setItems(format == OutputFormat.SUMMARY_CSV
+                    ? SummaryExporter.writeSummaryCsv(months, writer)
+                    : SummaryExporter.writeDayJsonLines(months, writer));
+        }
+    }
 
-        for (Row row : sheet) {
-            for (int column = 0; column < totalColumns; ++column) {
-                if (row.getCell(column) != null) {
-                    row.getCell(column).setCellStyle(style);
+    private static Path siblingPath(Path outputPath, String suffix) {
+        String fileName = outputPath.getFileName().toString();
+        int extension = fileName.lastIndexOf('.');
+        return outputPath.resolveSibling((extension > 0 ? fileName.substring(0, extension) : fileName) + suffix);
+    }
+
+    private void generateMonthWorkbooks(List<MonthAggregate> months, Path outputPath, ConversionMetrics metrics) throws IOException {
+        List<Path> written = Collections.synchronizedList(new ArrayList<>());
+        try {
+            // months are independent reports, so the whole export takes about as long as its largest month
+            computePool.submit(() -> months.parallelStream().forEach(month -> {
+                Path monthPath = monthReportPath(outputPath, month.table().getMonth());
+                try (OutputStream outputStream = new BufferedOutputStream(metrics.countBytes(Files.newOutputStream(monthPath)))) {
+                    written.add(monthPath);
+                    this.generate(List.of(month), outputStream, metrics);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
                 }
+                System.out.println("Month report written - " + monthPath);
+            })).join();
+        } catch (RuntimeException e) {
+            for (Path monthPath : written) {
+                Files.deleteIfExists(monthPath);
             }
+            if (e instanceof UncheckedIOException uncheckedIOException) {
+                throw uncheckedIOException.getCause();
+            }
+            throw e;
         }
-
     }
 
-    private void updateWeekendColour(Workbook workbook, Sheet sheet, int length) {
-        int rowIndex = 0;
-        sheet.setColumnWidth(0, 6400);
-        sheet.setColumnWidth(1, 4352);
-        sheet.setColumnWidth(2, 5120);
-        sheet.setColumnWidth(3, 30720);
-
-        for (Row row : sheet) {
-            if (rowIndex == 0) {
-                ++rowIndex;
-            } else {
-                Cell cell = row.getCell(1);
-                LocalDate date = null;
-                String cellValue = cell.toString();
-
-                try {
-                    date = parseDateFromCellValue(cellValue);
-                } catch (DateTimeParseException var16) {
-                    System.out.println(var16.getMessage());
-                }
+    private static Path monthReportPath(Path outputPath, YearMonth month) {
+        String fileName = outputPath.getFileName().toString();
+        int extension = fileName.lastIndexOf('.');
+        String monthFileName = extension > 0
+                ? fileName.substring(0, extension) + "-" + month + fileName.substring(extension)
+                : fileName + "-" + month;
+        return outputPath.resolveSibling(monthFileName);
+    }
 
-                CellStyle descStyle = workbook.createCellStyle();
-                Font boldFont = workbook.createFont();
-                boldFont.setFontName(CALI_BRI_STYLE);
-                descStyle.setBorderTop(BorderStyle.THIN);
-                descStyle.setBorderBottom(BorderStyle.THIN);
-                descStyle.setBorderLeft(BorderStyle.THIN);
-                descStyle.setBorderRight(BorderStyle.THIN);
-                descStyle.setFont(boldFont);
-                descStyle.setAlignment(HorizontalAlignment.LEFT);
-                descStyle.setVerticalAlignment(VerticalAlignment.CENTER);
-                Cell descriptionCell = row.getCell(3);
-                if (row.getCell(3).equals(descriptionCell)) {
-                    row.setHeight((short) -1);
+    /**
+     * Writes one workbook with a summary and the employee sheets of every month, prefixed by the month when there are
+     * several of them.
+     */
+    void generate(List<MonthAggregate> months, OutputStream outputStream, ConversionMetrics metrics) throws IOException {
+        if (outputEngine == OutputEngine.SPREADSHEETML) {
+            this.generateSpreadsheetML(months, outputStream, metrics);
+            return;
+        }
+        // rows are written once with their final content and style, so only a window of them stays in memory
+        // closing the workbook also deletes its temporary sheet files
+        try (SXSSFWorkbook outputWorkbook = new SXSSFWorkbook(rowAccessWindowSize)) {
+            CellStylePool stylePool = new CellStylePool(outputWorkbook);
+            for (MonthAggregate month : months) {
+                YearMonth yearMonth = month.table().getMonth();
+                String sheetPrefix = months.size() > 1 ? yearMonth + " " : "";
+                // rendering covers styling and column width estimation, both happen as the cells are written
+                try (ConversionMetrics.Span span = metrics.begin(ConversionMetrics.Stage.RENDER, yearMonth)) {
+                    this.addSummaryPage(outputWorkbook, stylePool, month, sheetPrefix);
+                    this.addEachTimeSheet(outputWorkbook, stylePool, month.employeeSheets(), sheetPrefix);
+                    span.setItems(month.employeeSheets().size() + 1);
                 }
+            }
+            try (ConversionMetrics.Span span = metrics.begin(ConversionMetrics.Stage.SERIALIZE, months.size() == 1 ? months.get(0).table().getMonth() : null)) {
+                outputWorkbook.write(outputStream);
+                span.setItems(outputWorkbook.getNumberOfSheets());
+            }
+            metrics.addCellStyles(stylePool.size());
+        }
+    }
 
-                if (descriptionCell != null) {
-                    descriptionCell.setCellStyle(descStyle);
+    private void generateSpreadsheetML(List<MonthAggregate> months, OutputStream outputStream, ConversionMetrics metrics) throws IOException {
+        try (SpreadsheetMLWriter writer = new SpreadsheetMLWriter(outputStream, computePool, compression.getLevel())) {
+            this.addSheetStyles(writer);
+            List<SheetPartCache.MonthParts> cachedParts = new ArrayList<>();
+            for (MonthAggregate month : months) {
+                YearMonth yearMonth = month.table().getMonth();
+                String sheetPrefix = months.size() > 1 ? yearMonth + " " : "";
+                SheetPartCache.MonthParts monthParts = sheetCache == null || yearMonth == null ? null : sheetCache.load(yearMonth);
+                // finished sheets are deflated on the compute pool while the next ones are rendered
+                try (ConversionMetrics.Span span = metrics.begin(ConversionMetrics.Stage.RENDER, yearMonth)) {
+                    this.writeSummarySheet(writer, month, sheetPrefix);
+                    for (EmployeeSheet employeeSheet : month.employeeSheets()) {
+                        this.writeEmployeeSheet(writer, employeeSheet, sheetPrefix, monthParts);
+                    }
+                    span.setItems(month.employeeSheets().size() + 1);
                 }
-
-                byte[] cyanRGB;
-                XSSFColor xssfColor;
-                assert date != null;
-                if (this.isWeekend(date)) {
-                    cyanRGB = new byte[]{-109, -60, 125};
-                    xssfColor = new XSSFColor(cyanRGB, null);
-                    this.applyColour(workbook, sheet, length, rowIndex, xssfColor);
-                } else if (descriptionCell.toString().isEmpty()) {
-                    descriptionCell.setCellValue("On Leave");
-                    cyanRGB = new byte[]{0, -1, -1};
-                    xssfColor = new XSSFColor(cyanRGB, null);
-                    this.applyColour(workbook, sheet, length, rowIndex, xssfColor);
+                if (monthParts != null) {
+                    cachedParts.add(monthParts);
                 }
-
-                ++rowIndex;
             }
+            try (ConversionMetrics.Span span = metrics.begin(ConversionMetrics.Stage.SERIALIZE, months.size() == 1 ? months.get(0).table().getMonth() : null)) {
+                writer.finish();
+                span.setItems(writer.getSheetCount());
+            }
+            for (SheetPartCache.MonthParts monthParts : cachedParts) {
+                sheetCache.save(monthParts);
+            }
+            metrics.addCellStyles(writer.getStyleCount());
         }
-
     }
 
-    private void applyColourFontOnColumns(Workbook outputWorkbook, Sheet sheet, int length, XSSFColor xssfColor) {
-        Font boldFont = outputWorkbook.createFont();
-        boldFont.setFontName(CALI_BRI_STYLE);
-        boldFont.setBold(true);
-        XSSFCellStyle headerStyle = ((XSSFWorkbook) outputWorkbook).createCellStyle();
-        headerStyle.setBorderTop(BorderStyle.THIN);
-        headerStyle.setBorderBottom(BorderStyle.THIN);
-        headerStyle.setBorderLeft(BorderStyle.THIN);
-        headerStyle.setBorderRight(BorderStyle.THIN);
-        headerStyle.setAlignment(HorizontalAlignment.CENTER);
-        headerStyle.setVerticalAlignment(VerticalAlignment.CENTER);
-        headerStyle.setFont(boldFont);
-        headerStyle.setWrapText(true);
-        headerStyle.setFillForegroundColor(xssfColor);
-        headerStyle.setFillPattern(FillPatternType.SOLID_FOREGROUND);
-        Row firstRow = sheet.getRow(0);
-
-        for (int column = 0; column < length; ++column) {
-            Cell cell = firstRow.getCell(column);
-            cell.setCellStyle(headerStyle);
+    private void writeSummarySheet(SpreadsheetMLWriter writer, MonthAggregate month, String sheetPrefix) throws IOException {
+        int borderStyle = writer.style(BORDER_STYLE);
+        int totalStyle = writer.style(TOTAL_STYLE);
+        ColumnWidthEstimator columnWidths = new ColumnWidthEstimator(SUMMARY_COLUMNS.length);
+        this.trackColumns(SUMMARY_COLUMNS, columnWidths);
+        // summed in minutes, so the total has no rounding error
+        double totalHours = month.table().getTotalMinutes() / 60.0;
+        for (EmployeeSheet employeeSheet : month.employeeSheets()) {
+            double hours = month.employeeNames().get(employeeSheet.getName());
+            columnWidths.track(0, employeeSheet.getName(), false);
+            columnWidths.track(1, hours, false);
+            columnWidths.track(2, "Existing", false);
+            columnWidths.track(3, employeeSheet.getLeaveDays(), false);
+            columnWidths.track(4, month.days().utilisation(hours), false);
         }
+        columnWidths.track(0, "Total Hours", true);
+        columnWidths.track(1, totalHours, true);
+        columnWidths.track(0, "Working Days", true);
+        columnWidths.track(1, month.days().getWorkingDays(), true);
 
+        writer.startSheet(sheetPrefix + "Summary", widthsOf(columnWidths, SUMMARY_COLUMNS.length));
+        this.writeColumns(writer, SUMMARY_COLUMNS);
+        int rowIndex = 1;
+        for (EmployeeSheet employeeSheet : month.employeeSheets()) {
+            double hours = month.employeeNames().get(employeeSheet.getName());
+            writer.startRow(rowIndex++);
+            writer.stringCell(0, employeeSheet.getName(), borderStyle);
+            writer.numberCell(1, hours, borderStyle);
+            writer.stringCell(2, "Existing", borderStyle);
+            writer.numberCell(3, employeeSheet.getLeaveDays(), borderStyle);
+            writer.numberCell(4, month.days().utilisation(hours), borderStyle);
+        }
+        writer.startRow(rowIndex++);
+        for (int column = 0; column < SUMMARY_COLUMNS.length; column++) {
+            writer.blankCell(column, borderStyle);
+        }
+        writer.startRow(rowIndex++);
+        writer.stringCell(0, "Total Hours", totalStyle);
+        writer.numberCell(1, totalHours, totalStyle);
+        for (int column = 2; column < SUMMARY_COLUMNS.length; column++) {
+            writer.blankCell(column, totalStyle);
+        }
+        writer.startRow(rowIndex);
+        writer.stringCell(0, "Working Days", totalStyle);
+        writer.numberCell(1, month.days().getWorkingDays(), totalStyle);
+        for (int column = 2; column < SUMMARY_COLUMNS.length; column++) {
+            writer.blankCell(column, totalStyle);
+        }
     }
 
-    private void applyColour(Workbook outputWorkbook, Sheet sheet, int length, int rowIndex, XSSFColor xssfColor) {
-        XSSFRow row = (XSSFRow) sheet.getRow(rowIndex);
-        if (row != null) {
-            for (int column = 0; column < length; ++column) {
-                Cell cell = row.getCell(column);
-                if (cell != null) {
-                    CellStyle originalStyle = cell.getCellStyle();
-                    XSSFCellStyle newStyle = ((XSSFWorkbook) outputWorkbook).createCellStyle();
-                    if (originalStyle != null) {
-                        newStyle.cloneStyleFrom(originalStyle);
-                    }
-
-                    newStyle.setFillForegroundColor(xssfColor);
-                    newStyle.setFillPattern(FillPatternType.SOLID_FOREGROUND);
-                    cell.setCellStyle(newStyle);
-                }
+    /**
+     * Adds every style the sheets use in a fixed order, so a sheet part written by an earlier report has the same
+     * style indexes as a fresh one.
+     */
+    private void addSheetStyles(SpreadsheetMLWriter writer) {
+        writer.style(BORDER_STYLE);
+        writer.style(TOTAL_STYLE);
+        writer.style(HEADER_STYLE);
+        writer.style(DESCRIPTION_STYLE);
+        for (DayType type : DayType.values()) {
+            String fillColour = this.fillColourOf(type);
+            if (fillColour != null) {
+                writer.style(BORDER_STYLE.withFill(fillColour));
+                writer.style(DESCRIPTION_STYLE.withFill(fillColour));
             }
+        }
+    }
 
+    private void writeEmployeeSheet(SpreadsheetMLWriter writer, EmployeeSheet employeeSheet, String sheetPrefix,
+                                    SheetPartCache.MonthParts cachedParts) throws IOException {
+        if (cachedParts == null) {
+            this.writeEmployeeSheet(writer, employeeSheet, sheetPrefix);
+            return;
+        }
+        byte[] contentHash = SheetPartCache.contentHash(employeeSheet, compression.getLevel());
+        DeflatedZipWriter.Entry part = cachedParts.get(employeeSheet.getName(), contentHash);
+        if (part != null) {
+            writer.copySheet(sheetPrefix + employeeSheet.getName(), part);
+        } else {
+            this.writeEmployeeSheet(writer, employeeSheet, sheetPrefix);
+            cachedParts.put(employeeSheet.getName(), contentHash, writer.endSheet());
         }
     }
 
-    private void fitColumnContent(int length, Sheet sheet) {
-        for (int column = 0; column < length; ++column) {
-            sheet.autoSizeColumn(column);
+    void writeEmployeeSheet(SpreadsheetMLWriter writer, EmployeeSheet employeeSheet, String sheetPrefix) throws IOException {
+        // the day styles of each row type, in the order of the day type constants
+        int[] dayStyles = new int[DayType.values().length];
+        int[] descriptionStyles = new int[DayType.values().length];
+        for (DayType type : DayType.values()) {
+            String fillColour = this.fillColourOf(type);
+            dayStyles[type.ordinal()] = writer.style(fillColour == null ? BORDER_STYLE : BORDER_STYLE.withFill(fillColour));
+            descriptionStyles[type.ordinal()] = writer.style(fillColour == null ? DESCRIPTION_STYLE : DESCRIPTION_STYLE.withFill(fillColour));
         }
+        int totalStyle = writer.style(TOTAL_STYLE);
 
-    }
+        ColumnWidthEstimator columnWidths = new ColumnWidthEstimator(EMPLOYEE_COLUMNS.length);
+        this.trackColumns(EMPLOYEE_COLUMNS, columnWidths);
+        for (DayRow dayRow : employeeSheet.getRows()) {
+            this.trackDayRow(columnWidths, employeeSheet.getName(), dayRow);
+        }
+        int[] widths = widthsOf(columnWidths, EMPLOYEE_COLUMNS.length);
+        System.arraycopy(FIXED_COLUMN_WIDTHS, 0, widths, 0, FIXED_COLUMN_WIDTHS.length);
 
-    private void addEachPersonSheetData(CellStyle style, Sheet sourceSheet, Sheet destinationSheet, String name, int month, int year) {
-        LocalDate firstDate = LocalDate.of(year, month, 1);
-        LocalDate lastDate = firstDate.withDayOfMonth(firstDate.lengthOfMonth());
+        writer.startSheet(sheetPrefix + employeeSheet.getName(), widths);
+        this.writeColumns(writer, EMPLOYEE_COLUMNS);
         int rowIndex = 1;
-
-        for (LocalDate date = firstDate; !date.isAfter(lastDate); date = date.plusDays(1L)) {
-            Row row = destinationSheet.createRow(rowIndex++);
-            Cell nameCell = row.createCell(0);
-            nameCell.setCellValue(name);
-            nameCell.setCellStyle(style);
-            Cell dateCell = row.createCell(1);
-            DateTimeFormatter formatter = DateTimeFormatter.ofPattern(OUT_PUT_DATE_FORMAT);
-            dateCell.setCellValue(date.format(formatter));
-            Cell titleCell = row.createCell(2);
-            titleCell.setCellStyle(style);
-            Cell descriptionCell = row.createCell(3);
-            descriptionCell.setCellStyle(style);
-            row.createCell(4);
-            Set<String> titles = new HashSet<>();
-            if (!this.isWeekend(date)) {
-                for (Row sourceRow : sourceSheet) {
-                    if (sourceRow.getRowNum() != 0) {
-                        Cell empCell = sourceRow.getCell(1);
-                        Cell dateCellSrc = sourceRow.getCell(3);
-                        if (empCell != null && dateCellSrc != null && name.equals(empCell.toString())) {
-                            try {
-                                LocalDate srcDate = parseDateFromCellValue(dateCellSrc.toString());
-                                if (srcDate.equals(date)) {
-                                    Cell titleDataCell = sourceRow.getCell(4);
-                                    if (titleDataCell != null) {
-                                        String titleStr = titleDataCell.getStringCellValue();
-                                        if (titleStr.startsWith("'")) {
-                                            titleStr = titleStr.substring(1);
-                                        }
-                                        if (!titleStr.isEmpty()) {
-                                            titles.add(titleStr);
-                                        }
-                                    }
-                                }
-                            } catch (Exception var31) {
-                                System.out.println(var31.getMessage());
-                            }
-                        }
-                    }
-                }
-                String concatenatedTitles = String.join(", ", titles);
-                titleCell.setCellValue(concatenatedTitles);
+        for (DayRow dayRow : employeeSheet.getRows()) {
+            int style = dayStyles[dayRow.type().ordinal()];
+            writer.startRow(rowIndex++);
+            writer.stringCell(0, employeeSheet.getName(), style);
+            writer.stringCell(1, dayRow.date(), style);
+            if (dayRow.title() != null) {
+                writer.stringCell(2, dayRow.title(), style);
+            } else {
+                writer.blankCell(2, style);
+            }
+            if (dayRow.description() != null) {
+                writer.stringCell(3, dayRow.description(), descriptionStyles[dayRow.type().ordinal()]);
+            } else {
+                writer.blankCell(3, descriptionStyles[dayRow.type().ordinal()]);
             }
+            if (dayRow.hours() != null) {
+                writer.numberCell(4, dayRow.hours(), style);
+            } else {
+                writer.blankCell(4, style);
+            }
+        }
+        writer.startRow(rowIndex++);
+        writer.startRow(rowIndex);
+        writer.stringCell(0, "Total", totalStyle);
+        for (int column = 1; column < EMPLOYEE_COLUMNS.length - 1; column++) {
+            writer.blankCell(column, totalStyle);
         }
+        writer.numberCell(EMPLOYEE_COLUMNS.length - 1, employeeSheet.getTotalHours(), totalStyle);
+    }
 
-        this.updateDescriptionAndHours(sourceSheet, destinationSheet, name, style);
+    private void trackColumns(String[] columns, ColumnWidthEstimator columnWidths) {
+        for (int column = 0; column < columns.length; column++) {
+            columnWidths.track(column, columns[column], true);
+        }
     }
 
-    private int findColumnIndex(Sheet sourceSheet, String fieldName) {
-        Row row = sourceSheet.getRow(0);
-        int columnIndex = 0;
+    private void writeColumns(SpreadsheetMLWriter writer, String[] columns) throws IOException {
+        int headerStyle = writer.style(HEADER_STYLE);
+        writer.startRow(0);
+        for (int column = 0; column < columns.length; column++) {
+            writer.stringCell(column, columns[column], headerStyle);
+        }
+    }
 
-        for (Iterator<Cell> var5 = row.iterator(); var5.hasNext(); ++columnIndex) {
-            Cell cell = var5.next();
-            if (cell.toString().equals(fieldName)) {
-                return columnIndex;
-            }
+    private static int[] widthsOf(ColumnWidthEstimator columnWidths, int columns) {
+        int[] widths = new int[columns];
+        for (int column = 0; column < columns; column++) {
+            widths[column] = columnWidths.getWidth(column);
         }
+        return widths;
+    }
 
-        return -1;
+    private void evictCachedMonths(List<TimeSheetTable> months) {
+        if (sheetCache != null) {
+            sheetCache.evict(months.stream().map(TimeSheetTable::getMonth).filter(Objects::nonNull).toList());
+            System.out.println("Sheet part cache - " + sheetCache);
+        }
     }
 
-    private String findNameFromSheet(Sheet sourceSheet, int rowIndex) {
-        int colIndex = this.findColumnIndex(sourceSheet, "Emp Name");
-        return sourceSheet.getRow(rowIndex).getCell(colIndex).toString();
+    private void addSummaryPage(SXSSFWorkbook outputWorkbook, CellStylePool stylePool, MonthAggregate month, String sheetPrefix) {
+        SXSSFSheet outputSheet = outputWorkbook.createSheet(sheetPrefix + "Summary");
+        ColumnWidthEstimator columnWidths = new ColumnWidthEstimator(SUMMARY_COLUMNS.length);
+        this.addColumns(SUMMARY_COLUMNS, outputSheet, stylePool.get(HEADER_STYLE), columnWidths);
+        this.fillSummarySheet(outputSheet, month, stylePool.get(BORDER_STYLE), stylePool.get(TOTAL_STYLE), columnWidths);
+        this.fitColumnContent(columnWidths, outputSheet);
     }
 
-    private Cell findDateFromSheet(Sheet sourceSheet, int rowIndex) {
-        int colIndex = this.findColumnIndex(sourceSheet, "Date");
-        return sourceSheet.getRow(rowIndex).getCell(colIndex);
+    private List<EmployeeSheet> computeEmployeeSheets(TimeSheetTable table) {
+        int[] employees = table.getEmployeesByName();
+        // sheets are independent of each other, the ordered collect keeps them sorted by name whatever the parallelism
+        return computePool.submit(() -> Arrays.stream(employees).parallel()
+                .mapToObj(employee -> this.computeEmployeeSheet(table, employee))
+                .collect(Collectors.toList())).join();
     }
 
-    private String findDescriptionFromSheet(Sheet sourceSheet, int rowIndex) {
-        int colIndex = this.findColumnIndex(sourceSheet, "Description");
-        return sourceSheet.getRow(rowIndex).getCell(colIndex).toString();
+    private void addEachTimeSheet(SXSSFWorkbook outputWorkbook, CellStylePool stylePool, List<EmployeeSheet> employeeSheets,
+                                  String sheetPrefix) {
+        String[] columns = EMPLOYEE_COLUMNS;
+
+        for (EmployeeSheet employeeSheet : employeeSheets) {
+            SXSSFSheet currentSheet = outputWorkbook.createSheet(sheetPrefix + employeeSheet.getName());
+            ColumnWidthEstimator columnWidths = new ColumnWidthEstimator(columns.length);
+            this.addColumns(columns, currentSheet, stylePool.get(HEADER_STYLE), columnWidths);
+            this.addEachPersonSheetData(stylePool, employeeSheet, currentSheet, columnWidths);
+            this.fitColumnContent(columnWidths, currentSheet);
+            this.setFixedColumnWidths(currentSheet);
+            int lastRowNum = currentSheet.getLastRowNum();
+            currentSheet.createRow(lastRowNum + 1);
+
+            Row totalRow = currentSheet.createRow(lastRowNum + 2);
+            Cell labelCell = totalRow.createCell(0);
+            labelCell.setCellValue("Total");
+            Cell totalCell = totalRow.createCell(4);
+            totalCell.setCellValue(employeeSheet.getTotalHours());
+            this.applyStyle(totalRow, stylePool.get(TOTAL_STYLE), columns.length);
+        }
+
     }
 
-    private Cell findTotalHoursFromSheet(Sheet sourceSheet, int rowIndex) {
-        int colIndex = this.findColumnIndex(sourceSheet, "Total Hours");
-        return sourceSheet.getRow(rowIndex).getCell(colIndex);
+    private void setFixedColumnWidths(Sheet sheet) {
+        for (int column = 0; column < FIXED_COLUMN_WIDTHS.length; column++) {
+            sheet.setColumnWidth(column, FIXED_COLUMN_WIDTHS[column]);
+        }
     }
 
-    private void updateDescriptionAndHours(Sheet sourceSheet, Sheet destinationSheet, String name, CellStyle style) {
-        Set<String> allTasks = new HashSet<>();
-        int rowCount = sourceSheet.getPhysicalNumberOfRows();
+    void updateWeekendColour(CellStylePool stylePool, Row row, DayType type, int length) {
+        String fillColour = this.fillColourOf(type);
+        if (fillColour != null) {
+            this.applyColour(stylePool, row, length, fillColour);
+        }
+    }
 
-        for (int rowIndex = 1; rowIndex < rowCount; ++rowIndex) {
-            Row row = sourceSheet.getRow(rowIndex);
-            if (row != null) {
-                String namePresent = this.findNameFromSheet(sourceSheet, rowIndex);
-                if (namePresent.equals(name)) {
-                    Cell dateCell = this.findDateFromSheet(sourceSheet, rowIndex);
-                    int getDay = this.getDayFromDate(dateCell.toString());
-                    Cell descriptionCell = destinationSheet.getRow(getDay).getCell(3);
-                    Cell projectTimeCell = destinationSheet.getRow(getDay).getCell(4);
-                    String existingTask = descriptionCell.toString();
-                    String newTask = this.findDescriptionFromSheet(sourceSheet, rowIndex);
-                    StringBuilder token = new StringBuilder(newTask);
-                    token.append("#");
-                    token.append(getDay);
+    private String fillColourOf(DayType type) {
+        return switch (type) {
+            case WEEKEND -> WEEKEND_GREEN;
+            case LEAVE -> LEAVE_CYAN;
+            case HOLIDAY -> HOLIDAY_ORANGE;
+            default -> null;
+        };
+    }
 
-                    if (!allTasks.contains(token.toString())) {
-                        allTasks.add(token.toString());
-                        if (!existingTask.isEmpty()) {
-                            existingTask = existingTask + ", ";
-                        }
+    private void applyColour(CellStylePool stylePool, Row row, int length, String fillColour) {
+        for (int column = 0; column < length; ++column) {
+            Cell cell = row.getCell(column);
+            if (cell != null) {
+                cell.setCellStyle(stylePool.withFill(cell.getCellStyle(), fillColour));
+            }
+        }
+    }
 
-                        existingTask = existingTask + newTask;
-                    }
+    void fitColumnContent(ColumnWidthEstimator columnWidths, Sheet sheet) {
+        columnWidths.applyTo(sheet);
+    }
 
-                    Cell hoursCell = this.findTotalHoursFromSheet(sourceSheet, rowIndex);
-                    String hours = hoursCell.getStringCellValue();
-                    double hoursDouble = this.findHoursInDouble(hours);
-                    projectTimeCell.setCellValue(hoursDouble);
-                    projectTimeCell.setCellStyle(style);
-                    descriptionCell.setCellValue(existingTask);
-                    descriptionCell.setCellStyle(style);
+    EmployeeSheet computeEmployeeSheet(TimeSheetTable table, int employee) {
+        YearMonth month = table.getMonth();
+        WorkingDayCalendar.MonthDays days = calendar.month(month);
+        LocalDate firstDate = month.atDay(1);
+        LocalDate lastDate = month.atEndOfMonth();
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern(OUT_PUT_DATE_FORMAT);
+        List<DayRow> rows = new ArrayList<>(month.lengthOfMonth());
+        int totalMinutes = 0;
+
+        // the employee's rows bucketed by day of month, keeping input order within a day
+        int[] dayStarts = new int[33];
+        // days with some work described, the working days without any are leave
+        int describedDays = 0;
+        for (int row = table.getFirstRow(employee); row != -1; row = table.getNextRow(row)) {
+            dayStarts[table.getDayOfMonth(row) + 1]++;
+            if (!table.getText(table.getDescription(row)).isEmpty()) {
+                describedDays |= 1 << table.getDayOfMonth(row);
+            }
+        }
+        int leaveDays = days.getWorkingDayBits() & ~describedDays;
+        for (int dayOfMonth = 1; dayOfMonth < dayStarts.length; dayOfMonth++) {
+            dayStarts[dayOfMonth] += dayStarts[dayOfMonth - 1];
+        }
+        int[] dayRows = new int[dayStarts[32]];
+        int[] nextSlots = Arrays.copyOf(dayStarts, 32);
+        for (int row = table.getFirstRow(employee); row != -1; row = table.getNextRow(row)) {
+            dayRows[nextSlots[table.getDayOfMonth(row)]++] = row;
+        }
+
+        for (LocalDate date = firstDate; !date.isAfter(lastDate); date = date.plusDays(1L)) {
+            int start = dayStarts[date.getDayOfMonth()];
+            int end = dayStarts[date.getDayOfMonth() + 1];
+            boolean entered = end > start;
+            int dayOfMonth = date.getDayOfMonth();
+            boolean dayOff = days.isWeekend(dayOfMonth) || days.isHoliday(dayOfMonth);
+            String titles = null;
+            String description = null;
+            Double hours = null;
+            if (!dayOff) {
+                titles = entered ? this.joinTitles(table, dayRows, start, end) : "";
+            }
+            if (entered) {
+                description = this.joinDescriptions(table, dayRows, start, end);
+                // the hours are repeated on every entry of the day, the last one wins
+                int minutes = table.getMinutes(dayRows[end - 1]);
+                hours = minutes / 60.0;
+                totalMinutes += minutes;
+            }
+            DayType type = DayType.WORKING;
+            if (days.isWeekend(dayOfMonth)) {
+                type = DayType.WEEKEND;
+            } else if (days.isHoliday(dayOfMonth)) {
+                type = DayType.HOLIDAY;
+                if (description == null || description.isEmpty()) {
+                    description = days.getHolidayName(dayOfMonth);
                 }
+            } else if ((leaveDays >>> dayOfMonth & 1) != 0) {
+                description = "On Leave";
+                type = DayType.LEAVE;
             }
+            rows.add(new DayRow(date.format(formatter), titles, description, hours, type));
         }
+        return new EmployeeSheet(table.getEmployeeName(employee), rows, totalMinutes / 60.0, Integer.bitCount(leaveDays));
+    }
 
+    void addEachPersonSheetData(CellStylePool stylePool, EmployeeSheet employeeSheet, Sheet destinationSheet, ColumnWidthEstimator columnWidths) {
+        String[] columns = EMPLOYEE_COLUMNS;
+        CellStyle style = stylePool.get(BORDER_STYLE);
+        int rowIndex = 1;
+
+        for (DayRow dayRow : employeeSheet.getRows()) {
+            Row row = destinationSheet.createRow(rowIndex++);
+            Cell nameCell = row.createCell(0);
+            nameCell.setCellValue(employeeSheet.getName());
+            nameCell.setCellStyle(style);
+            Cell dateCell = row.createCell(1);
+            dateCell.setCellValue(dayRow.date());
+            dateCell.setCellStyle(style);
+            Cell titleCell = row.createCell(2);
+            titleCell.setCellStyle(style);
+            if (dayRow.title() != null) {
+                titleCell.setCellValue(dayRow.title());
+            }
+            Cell descriptionCell = row.createCell(3);
+            descriptionCell.setCellStyle(stylePool.get(DESCRIPTION_STYLE));
+            if (dayRow.description() != null) {
+                descriptionCell.setCellValue(dayRow.description());
+            }
+            Cell projectTimeCell = row.createCell(4);
+            projectTimeCell.setCellStyle(style);
+            if (dayRow.hours() != null) {
+                projectTimeCell.setCellValue(dayRow.hours());
+            }
+            this.trackDayRow(columnWidths, employeeSheet.getName(), dayRow);
+            this.updateWeekendColour(stylePool, row, dayRow.type(), columns.length);
+        }
     }
 
-    private int getDayFromDate(String date) {
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern(OUT_PUT_DATE_FORMAT);
+    void trackDayRow(ColumnWidthEstimator columnWidths, String name, DayRow dayRow) {
+        columnWidths.track(0, name, false);
+        columnWidths.track(1, dayRow.date(), false);
+        columnWidths.track(2, dayRow.title(), false);
+        columnWidths.track(3, dayRow.description(), false);
+        if (dayRow.hours() != null) {
+            columnWidths.track(4, dayRow.hours(), false);
+        }
+    }
 
-        try {
-            LocalDate parsedDate = LocalDate.parse(date, formatter);
-            return parsedDate.getDayOfMonth();
-        } catch (DateTimeParseException var4) {
-            System.out.println("Invalid date format: " + date);
-            throw var4;
+    private String joinTitles(TimeSheetTable table, int[] dayRows, int start, int end) {
+        Set<String> titles = null;
+        String firstTitle = "";
+        for (int i = start; i < end; i++) {
+            int title = table.getTitle(dayRows[i]);
+            if (title == TimeSheetTable.NO_TITLE) {
+                continue;
+            }
+            if (firstTitle.isEmpty()) {
+                firstTitle = table.getText(title);
+            } else if (!firstTitle.equals(table.getText(title))) {
+                if (titles == null) {
+                    titles = new HashSet<>();
+                    titles.add(firstTitle);
+                }
+                titles.add(table.getText(title));
+            }
         }
+        return titles == null ? firstTitle : String.join(", ", titles);
     }
 
-    private boolean isWeekend(LocalDate date) {
-        DayOfWeek dayOfWeek = date.getDayOfWeek();
-        return dayOfWeek == DayOfWeek.SATURDAY || dayOfWeek == DayOfWeek.SUNDAY;
+    private String joinDescriptions(TimeSheetTable table, int[] dayRows, int start, int end) {
+        StringBuilder existingTask = new StringBuilder();
+        for (int i = start; i < end; i++) {
+            int newTask = table.getDescription(dayRows[i]);
+            if (this.isRepeatedDescription(table, dayRows, start, i, newTask)) {
+                continue;
+            }
+            if (existingTask.length() > 0) {
+                existingTask.append(", ");
+            }
+            existingTask.append(table.getText(newTask));
+        }
+        return existingTask.toString();
     }
 
-    private void fillSummarySheet(Sheet destinationSheet, Map<String, Double> employeeNames) {
+    private boolean isRepeatedDescription(TimeSheetTable table, int[] dayRows, int start, int end, int description) {
+        // texts are interned, so equal descriptions share a code; a day only has a handful of entries
+        for (int i = start; i < end; i++) {
+            if (table.getDescription(dayRows[i]) == description) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void fillSummarySheet(Sheet destinationSheet, MonthAggregate month, CellStyle borderStyle, CellStyle totalStyle,
+                                  ColumnWidthEstimator columnWidths) {
         int rowIndex = 1;
-        int totalHours = 0;
-        Iterator<String> var7 = employeeNames.keySet().iterator();
+        // summed in minutes, so the total has no rounding error
+        double totalHours = month.table().getTotalMinutes() / 60.0;
 
-        Cell thirdCell;
         Cell totalHoursSecondCol;
-        Cell blankThirdCol;
-        while (var7.hasNext()) {
-            String name = var7.next();
+        for (EmployeeSheet employeeSheet : month.employeeSheets()) {
+            String name = employeeSheet.getName();
             Row row = destinationSheet.createRow(rowIndex++);
-            thirdCell = row.createCell(0);
-            thirdCell.setCellValue(name);
-            double hours = employeeNames.get(name);
-            totalHours = (int) ((double) totalHours + hours);
-            totalHoursSecondCol = row.createCell(1);
-            totalHoursSecondCol.setCellValue(hours);
-            blankThirdCol = row.createCell(2);
-            blankThirdCol.setCellValue("Existing");
+            row.createCell(0).setCellValue(name);
+            double hours = month.employeeNames().get(name);
+            row.createCell(1).setCellValue(hours);
+            row.createCell(2).setCellValue("Existing");
+            // leave and utilisation come from the sheet and the calendar, no further pass over the rows
+            double utilisation = month.days().utilisation(hours);
+            row.createCell(3).setCellValue(employeeSheet.getLeaveDays());
+            row.createCell(4).setCellValue(utilisation);
+            this.applyStyle(row, borderStyle, SUMMARY_COLUMNS.length);
+            columnWidths.track(0, name, false);
+            columnWidths.track(1, hours, false);
+            columnWidths.track(2, "Existing", false);
+            columnWidths.track(3, employeeSheet.getLeaveDays(), false);
+            columnWidths.track(4, utilisation, false);
         }
 
         Row blankRow = destinationSheet.createRow(rowIndex++);
-        blankRow.createCell(0);
-        blankRow.createCell(1);
-        blankRow.createCell(2);
-        Row totalHoursRow = destinationSheet.createRow(rowIndex);
+        this.applyStyle(blankRow, borderStyle, SUMMARY_COLUMNS.length);
+        Row totalHoursRow = destinationSheet.createRow(rowIndex++);
         Cell totalHoursFirstCol = totalHoursRow.createCell(0);
         totalHoursFirstCol.setCellValue("Total Hours");
         totalHoursSecondCol = totalHoursRow.createCell(1);
         totalHoursSecondCol.setCellValue(totalHours);
-        totalHoursRow.createCell(2);
+        this.applyStyle(totalHoursRow, totalStyle, SUMMARY_COLUMNS.length);
+        columnWidths.track(0, "Total Hours", true);
+        columnWidths.track(1, totalHours, true);
+        Row workingDaysRow = destinationSheet.createRow(rowIndex);
+        workingDaysRow.createCell(0).setCellValue("Working Days");
+        workingDaysRow.createCell(1).setCellValue(month.days().getWorkingDays());
+        this.applyStyle(workingDaysRow, totalStyle, SUMMARY_COLUMNS.length);
+        columnWidths.track(0, "Working Days", true);
+        columnWidths.track(1, month.days().getWorkingDays(), true);
+    }
+
+    private void applyStyle(Row row, CellStyle style, int totalColumns) {
+        for (int column = 0; column < totalColumns; ++column) {
+            Cell cell = row.getCell(column);
+            if (cell == null) {
+                cell = row.createCell(column);
+            }
+            cell.setCellStyle(style);
+        }
     }
 
-    private void addColumns(String[] columns, Sheet sheet) {
+    private void addColumns(String[] columns, Sheet sheet, CellStyle headerStyle, ColumnWidthEstimator columnWidths) {
         Row row = sheet.createRow(0);
         int columnIndex = 0;
         for (String column : columns) {
+            columnWidths.track(columnIndex, column, true);
             Cell cell = row.createCell(columnIndex++);
             cell.setCellValue(column);
+            cell.setCellStyle(headerStyle);
         }
 
     }
 
-    private int findEmployeeNameIndex(Sheet sheet) {
-        Row firstRow = sheet.getRow(0);
-        int columnIndex = 0;
+    TreeMap<String, Double> findAllEmployeeNames(TimeSheetTable table) {
+        return table.totalHoursByEmployee();
+    }
 
-        for (Iterator<Cell> var4 = firstRow.iterator(); var4.hasNext(); ++columnIndex) {
-            Cell column = var4.next();
-            if (column.toString().equals("Emp Name")) {
-                return columnIndex;
-            }
+    private interface RowSource {
+        void read(DateDecoder dateDecoder, Consumer<TimeSheetRow> consumer) throws IOException;
+    }
+
+    /**
+     * The settings of a {@link ConverterService}, each starting from its default.
+     */
+    public static final class Builder {
+
+        private int rowAccessWindowSize = SXSSFWorkbook.DEFAULT_WINDOW_SIZE;
+        private ForkJoinPool computePool = ForkJoinPool.commonPool();
+        private SheetPartCache sheetCache;
+        private MonthLayout monthLayout = MonthLayout.WORKBOOK_PER_MONTH;
+        private Charset inputCharset = Charset.defaultCharset();
+        private OutputEngine outputEngine = OutputEngine.POI;
+        private Compression compression = Compression.DEFAULT;
+        private Set<OutputFormat> outputFormats = EnumSet.of(OutputFormat.XLSX);
+        private TimeSheetSchema schema = TimeSheetSchema.DEFAULT;
+        private WorkingDayCalendar calendar = WorkingDayCalendar.DEFAULT;
+
+        private Builder() {
         }
 
-        return -1;
-    }
+        /**
+         * @param rowAccessWindowSize rows per sheet kept in memory while a POI report is written, -1 keeps all of them
+         */
+        public Builder rowAccessWindowSize(int rowAccessWindowSize) {
+            this.rowAccessWindowSize = rowAccessWindowSize;
+            return this;
+        }
 
-    private int findTotalHoursIndex(Sheet sheet) {
-        Row firstRow = sheet.getRow(0);
-        int columnIndex = 0;
+        /**
+         * @param computePool pool the per employee sheet content is computed on, before it is written on the calling
+         *                    thread
+         */
+        public Builder computePool(ForkJoinPool computePool) {
+            this.computePool = computePool;
+            return this;
+        }
 
-        for (Iterator<Cell> var4 = firstRow.iterator(); var4.hasNext(); ++columnIndex) {
-            Cell column = var4.next();
-            if (column.toString().equals("Total Hours")) {
-                return columnIndex;
-            }
+        /**
+         * @param sheetCache cache of the employee sheet parts of previous {@link OutputEngine#SPREADSHEETML} reports,
+         *                   only the sheets of employees whose rows changed are rendered; {@code null} renders every sheet
+         */
+        public Builder sheetCache(SheetPartCache sheetCache) {
+            this.sheetCache = sheetCache;
+            return this;
         }
 
-        return -1;
-    }
-
-    private TreeMap<String, Double> findAllEmployeeNames(Sheet sheet) {
-        TreeMap<String, Double> store = new TreeMap<>();
-        Map<String, Set<Integer>> visited = new HashMap<>();
-        int empNameIndex = this.findEmployeeNameIndex(sheet);
-        int totalHoursIndex = this.findTotalHoursIndex(sheet);
-        Iterator<Row> var6 = sheet.iterator();
-
-        while (true) {
-            Cell hoursCell;
-            String name;
-            int day;
-            do {
-                Row row;
-                do {
-                    Cell cell;
-                    do {
-                        do {
-                            if (!var6.hasNext()) {
-                                return store;
-                            }
-
-                            row = var6.next();
-                            cell = row.getCell(empNameIndex);
-                        } while (cell == null);
-
-                        hoursCell = row.getCell(totalHoursIndex);
-                        name = cell.toString();
-                    } while (name.equals("Emp Name"));
-                } while (hoursCell == null);
-
-                Cell dateCell = row.getCell(3);
-                day = this.getDayFromDate(dateCell.toString());
-            } while (visited.containsKey(name) && visited.get(name).contains(day));
-
-            String hours = hoursCell.getStringCellValue();
-            double hoursDouble = this.findHoursInDouble(hours);
-            store.put(name, store.getOrDefault(name, 0.0) + hoursDouble);
-            if (!visited.containsKey(name)) {
-                visited.put(name, new HashSet<>());
-            }
+        /**
+         * @param monthLayout how an input spanning several months is written to a report file
+         */
+        public Builder monthLayout(MonthLayout monthLayout) {
+            this.monthLayout = monthLayout;
+            return this;
+        }
+
+        /**
+         * @param inputCharset charset of the CSV files read from disk
+         */
+        public Builder inputCharset(Charset inputCharset) {
+            this.inputCharset = inputCharset;
+            return this;
+        }
+
+        /**
+         * @param outputEngine how the report package is written
+         */
+        public Builder outputEngine(OutputEngine outputEngine) {
+            this.outputEngine = outputEngine;
+            return this;
+        }
+
+        /**
+         * @param compression how hard the parts of a {@link OutputEngine#SPREADSHEETML} report are deflated, POI
+         *                    reports keep POI's own level
+         */
+        public Builder compression(Compression compression) {
+            this.compression = compression;
+            return this;
+        }
+
+        /**
+         * @param outputFormats outputs written next to each other by
+         *                      {@link ConverterService#generateFromCSV(Path, Path, ConversionMetrics)}, all from a single
+         *                      aggregation of the time sheet
+         */
+        public Builder outputFormats(Set<OutputFormat> outputFormats) {
+            this.outputFormats = outputFormats;
+            return this;
+        }
+
+        /**
+         * @param schema where the fields are found in the time sheet exports
+         */
+        public Builder schema(TimeSheetSchema schema) {
+            this.schema = schema;
+            return this;
+        }
+
+        /**
+         * @param calendar the weekends and holidays the sheets mark and the summary counts working days from
+         */
+        public Builder calendar(WorkingDayCalendar calendar) {
+            this.calendar = calendar;
+            return this;
+        }
 
-            visited.get(name).add(day);
+        /**
+         * @throws IllegalArgumentException when no output format is selected or a sheet cache is given to the POI engine
+         */
+        public ConverterService build() {
+            if (outputFormats.isEmpty()) {
+                throw new IllegalArgumentException("No output format selected");
+            }
+            if (sheetCache != null && outputEngine != OutputEngine.SPREADSHEETML) {
+                throw new IllegalArgumentException("The sheet part cache needs the SPREADSHEETML engine");
+            }
+            return new ConverterService(this);
         }
     }
 
-    private double findHoursInDouble(String hours) {
-        if (hours == null) {
-            return 0;
+    /**
+     * How an input spanning several months is written to a report file.
+     */
+    public enum MonthLayout {
+        /**
+         * One workbook per month, generated in parallel.
+         */
+        WORKBOOK_PER_MONTH,
+        /**
+         * A single workbook with a summary and employee sheets per month, named after the month.
+         */
+        SHEETS_PER_MONTH
+    }
+
+    /**
+     * How the report package is written.
+     */
+    public enum OutputEngine {
+        /**
+         * Through POI's streaming workbook.
+         */
+        POI,
+        /**
+         * As SpreadsheetML written directly to the zip stream, with the same visible content at a fraction of the
+         * CPU and allocation cost.
+         */
+        SPREADSHEETML
+    }
+
+    /**
+     * What a conversion writes.
+     */
+    public enum OutputFormat {
+        /**
+         * The styled report workbook.
+         */
+        XLSX("Report", ".xlsx"),
+        /**
+         * One line of total hours per employee and month.
+         */
+        SUMMARY_CSV("Summary CSV", ".summary.csv"),
+        /**
+         * One JSON object per employee and day, with the rows of the employee sheets.
+         */
+        DAY_JSON_LINES("Day JSON Lines", ".days.jsonl");
+
+        private final String label;
+        private final String suffix;
+
+        OutputFormat(String label, String suffix) {
+            this.label = label;
+            this.suffix = suffix;
+        }
+
+        /**
+         * @return the file name suffix of the output, appended to the report name without its extension
+         */
+        public String getFileSuffix() {
+            return suffix;
         }
-        String[] timeData = hours.split(":");
-        if ((timeData.length != 2)) {
-            return 0;
+    }
+
+    /**
+     * Deflate level of the report parts.
+     */
+    public enum Compression {
+        /**
+         * Fastest, for interactive runs.
+         */
+        FAST(Deflater.BEST_SPEED),
+        DEFAULT(Deflater.DEFAULT_COMPRESSION),
+        /**
+         * Smallest files, for archival.
+         */
+        MAXIMUM(Deflater.BEST_COMPRESSION);
+
+        private final int level;
+
+        Compression(int level) {
+            this.level = level;
         }
-        double parsedHours = Double.parseDouble(timeData[0]);
-        double minutes = Double.parseDouble(timeData[1]);
-        if (minutes == 15) {
-            parsedHours += 0.3;
-        } else if (minutes == 30) {
-            parsedHours += 0.5;
-        } else if (minutes == 45) {
-            parsedHours += 0.75;
+
+        public int getLevel() {
+            return level;
         }
-        return parsedHours;
     }
 }
@@ -0,0 +1,118 @@
+package org.imaginnovate.timesheet.services;
+
+import com.opencsv.CSVReader;
+import com.opencsv.CSVReaderBuilder;
+import com.opencsv.RFC4180ParserBuilder;
+import com.opencsv.exceptions.CsvValidationException;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.function.Consumer;
+
+/**
+ * Streams the rows of a raw time sheet CSV as {@link TimeSheetRow}s, binding the header to the schema once.
+ */
+public class CsvTimeSheetReader {
+
+    private final DateDecoder dateDecoder;
+    private final TimeSheetSchema schema;
+
+    public CsvTimeSheetReader(DateDecoder dateDecoder) {
+        this(dateDecoder, TimeSheetSchema.DEFAULT);
+    }
+
+    public CsvTimeSheetReader(DateDecoder dateDecoder, TimeSheetSchema schema) {
+        this.dateDecoder = dateDecoder;
+        this.schema = schema;
+    }
+
+    public void read(Reader reader, Consumer<TimeSheetRow> consumer) throws IOException {
+        // RFC 4180 quoting like the mapped reader, a backslash is an ordinary character
+        try (CSVReader csvReader = new CSVReaderBuilder(reader).withCSVParser(new RFC4180ParserBuilder().build()).build()) {
+            String[] header = csvReader.readNext();
+            if (header == null) {
+                return;
+            }
+            TimeSheetSchema.Binding binding = schema.bind(header);
+
+            String[] lineItems;
+            while ((lineItems = csvReader.readNext()) != null) {
+                TimeSheetRow row = this.toRow(binding.valueOf(lineItems, TimeSheetSchema.Field.NAME),
+                        binding.valueOf(lineItems, TimeSheetSchema.Field.DATE),
+                        binding.valueOf(lineItems, TimeSheetSchema.Field.TITLE),
+                        binding.valueOf(lineItems, TimeSheetSchema.Field.DESCRIPTION),
+                        binding.valueOf(lineItems, TimeSheetSchema.Field.HOURS));
+                if (row != null) {
+                    consumer.accept(row);
+                }
+            }
+        } catch (CsvValidationException e) {
+            throw new IOException("Invalid time sheet CSV: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return the typed row of the raw field values, {@code null} when the name, date or hours are missing or blank,
+     * as in a row shorter than the header or an empty spreadsheet row
+     */
+    TimeSheetRow toRow(String name, String date, String title, String description, String hours) {
+        if (isBlank(name) || isBlank(date) || isBlank(hours)) {
+            return null;
+        }
+        return new TimeSheetRow(name,
+                dateDecoder.decode(date),
+                title,
+                description == null ? "" : description,
+                this.parseMinutes(hours));
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.isBlank();
+    }
+
+    /**
+     * @return the minutes of an {@code h:mm} duration, rounded to a whole minute when a part has decimals as in
+     * {@code 7.5:00}, 0 if it is not one
+     */
+    private int parseMinutes(String hours) {
+        int separator = hours.indexOf(':');
+        if (separator < 0 || hours.indexOf(':', separator + 1) >= 0) {
+            return 0;
+        }
+        double minutes = parseDurationPart(hours, 0, separator) * 60 + parseDurationPart(hours, separator + 1, hours.length());
+        return Double.isNaN(minutes) ? 0 : (int) Math.round(minutes);
+    }
+
+    /**
+     * @return the unsigned decimal number between {@code start} and {@code end}, surrounding blanks ignored,
+     * {@code NaN} if there is none
+     */
+    private static double parseDurationPart(String text, int start, int end) {
+        while (start < end && Character.isWhitespace(text.charAt(start))) {
+            start++;
+        }
+        while (end > start && Character.isWhitespace(text.charAt(end - 1))) {
+            end--;
+        }
+        double value = 0;
+        double scale = 0;
+        boolean digits = false;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits = true;
+                if (scale == 0) {
+                    value = value * 10 + (c - '0');
+                } else {
+                    value += (c - '0') * scale;
+                    scale /= 10;
+                }
+            } else if (c == '.' && scale == 0) {
+                scale = 0.1;
+            } else {
+                return Double.NaN;
+            }
+        }
+        return digits ? value : Double.NaN;
+    }
+}
@@ -0,0 +1,119 @@
+package org.imaginnovate.timesheet.services;
+
+import com.joestelmach.natty.DateGroup;
+import com.joestelmach.natty.Parser;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decodes the raw date strings of a time sheet. Known export formats are parsed with pre-compiled formatters,
+ * decoded values are cached by their raw string and natty is only used for strings no fast path understands.
+ */
+public class DateDecoder {
+
+    private static final int DEFAULT_MAX_ENTRIES = 1024;
+
+    private static final DateTimeFormatter[] FAST_PATHS = {
+            formatter("MMM d, yyyy"),
+            formatter("d-MMM-yyyy")
+    };
+
+    private final Map<String, LocalDate> cache;
+    private final int maxEntries;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder fastPathParses = new LongAdder();
+    private final LongAdder fallbacks = new LongAdder();
+
+    public DateDecoder() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    public DateDecoder(int maxEntries) {
+        this(new ConcurrentHashMap<>(), maxEntries);
+    }
+
+    private DateDecoder(Map<String, LocalDate> cache, int maxEntries) {
+        this.cache = cache;
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * @return a decoder sharing this one's cache, counting only the dates it decodes itself
+     */
+    public DateDecoder forConversion() {
+        return new DateDecoder(cache, maxEntries);
+    }
+
+    public LocalDate decode(String input) {
+        LocalDate date = cache.get(input);
+        if (date != null) {
+            hits.increment();
+            return date;
+        }
+        date = parseFastPath(input.trim());
+        if (date != null) {
+            fastPathParses.increment();
+        } else {
+            date = parseWithNatty(input);
+            fallbacks.increment();
+        }
+        // a month of data only has a handful of distinct dates, so once full the cache simply stops growing
+        if (cache.size() < maxEntries) {
+            cache.put(input, date);
+        }
+        return date;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getFastPathParses() {
+        return fastPathParses.sum();
+    }
+
+    public long getFallbacks() {
+        return fallbacks.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "hits=" + getHits() + ", fast path=" + getFastPathParses() + ", fallback=" + getFallbacks();
+    }
+
+    private static LocalDate parseFastPath(String input) {
+        for (DateTimeFormatter formatter : FAST_PATHS) {
+            try {
+                return LocalDate.parse(input, formatter);
+            } catch (DateTimeParseException ignored) {
+                // try the next known format
+            }
+        }
+        return null;
+    }
+
+    private static LocalDate parseWithNatty(String input) {
+        Parser parser = new Parser();
+        List<DateGroup> groups = parser.parse(input);
+        if (groups.isEmpty() || groups.get(0).getDates().isEmpty()) {
+            throw new IllegalArgumentException("Unable to parse date: " + input);
+        }
+        return groups.get(0).getDates().get(0).toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
+    }
+
+    private static DateTimeFormatter formatter(String pattern) {
+        return new DateTimeFormatterBuilder()
+                .parseCaseInsensitive()
+                .appendPattern(pattern)
+                .toFormatter(Locale.ENGLISH);
+    }
+}
@@ -0,0 +1,179 @@
+package org.imaginnovate.timesheet.services;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes a zip file from entries deflated ahead of time, possibly on other threads, since {@link java.util.zip.ZipOutputStream}
+ * can only deflate on the writing thread. Entries are written in the order they are added. Closing the writer releases
+ * the native memory of its deflaters, whether or not the zip was finished.
+ */
+public class DeflatedZipWriter implements AutoCloseable {
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+    private static final int VERSION = 20;
+    // entry names are UTF-8
+    private static final int FLAGS = 0x0800;
+    private static final int DEFLATED = 8;
+    private static final long MAX_SIZE = 0xFFFFFFFFL;
+    private static final int MAX_ENTRIES = 0xFFFF;
+
+    private final OutputStream out;
+    private final int level;
+    private final int dosTime;
+    private final int dosDate;
+    private final ConcurrentLinkedQueue<Deflater> deflaters = new ConcurrentLinkedQueue<>();
+    private final ByteArrayOutputStream centralDirectory = new ByteArrayOutputStream();
+    private final byte[] header = new byte[46];
+    private long offset;
+    private int entries;
+    private volatile boolean closed;
+
+    /**
+     * @param level deflate level, from {@link Deflater#BEST_SPEED} to {@link Deflater#BEST_COMPRESSION} or
+     *              {@link Deflater#DEFAULT_COMPRESSION}
+     */
+    public DeflatedZipWriter(OutputStream out, int level) {
+        this.out = out;
+        this.level = level;
+        LocalDateTime now = LocalDateTime.now();
+        this.dosTime = now.getHour() << 11 | now.getMinute() << 5 | now.getSecond() >> 1;
+        this.dosDate = Math.max(now.getYear() - 1980, 0) << 9 | now.getMonthValue() << 5 | now.getDayOfMonth();
+    }
+
+    /**
+     * Deflates the content of an entry, safe to call from any thread.
+     */
+    public Entry deflate(String name, byte[] content, int length) {
+        Deflater deflater = deflaters.poll();
+        if (deflater == null) {
+            deflater = new Deflater(level, true);
+        }
+        try {
+            deflater.setInput(content, 0, length);
+            deflater.finish();
+            // incompressible content grows by a few bytes per 16 KB block at worst
+            byte[] compressed = new byte[length + (length >> 12) + 64];
+            int compressedLength = 0;
+            while (!deflater.finished()) {
+                if (compressedLength == compressed.length) {
+                    compressed = Arrays.copyOf(compressed, compressed.length * 2);
+                }
+                compressedLength += deflater.deflate(compressed, compressedLength, compressed.length - compressedLength);
+            }
+            CRC32 crc = new CRC32();
+            crc.update(content, 0, length);
+            return new Entry(name, compressed, compressedLength, length, crc.getValue());
+        } finally {
+            deflater.reset();
+            deflaters.offer(deflater);
+            // an entry finishing after the writer was closed releases its deflater itself
+            if (closed) {
+                this.endDeflaters();
+            }
+        }
+    }
+
+    public void write(Entry entry) throws IOException {
+        if (offset > MAX_SIZE || ++entries > MAX_ENTRIES) {
+            throw new IOException("Zip entry " + entry.name() + " needs ZIP64, which is not supported");
+        }
+        byte[] name = entry.name().getBytes(StandardCharsets.UTF_8);
+
+        int position = putInt(header, 0, LOCAL_HEADER_SIGNATURE);
+        position = putShort(header, position, VERSION);
+        position = this.putEntryFields(header, position, entry, name.length);
+        position = putShort(header, position, 0);
+        out.write(header, 0, position);
+        out.write(name);
+        out.write(entry.data(), 0, entry.compressedSize());
+
+        position = putInt(header, 0, CENTRAL_HEADER_SIGNATURE);
+        position = putShort(header, position, VERSION);
+        position = putShort(header, position, VERSION);
+        position = this.putEntryFields(header, position, entry, name.length);
+        // extra field, comment, disk, internal and external attributes
+        position = putShort(header, position, 0);
+        position = putShort(header, position, 0);
+        position = putShort(header, position, 0);
+        position = putShort(header, position, 0);
+        position = putInt(header, position, 0);
+        position = putInt(header, position, (int) offset);
+        centralDirectory.write(header, 0, position);
+        centralDirectory.write(name);
+
+        offset += 30 + name.length + entry.compressedSize();
+    }
+
+    /**
+     * Writes the central directory, leaving the underlying stream open.
+     */
+    public void finish() throws IOException {
+        if (offset > MAX_SIZE || centralDirectory.size() > MAX_SIZE) {
+            throw new IOException("Zip file needs ZIP64, which is not supported");
+        }
+        centralDirectory.writeTo(out);
+        int position = putInt(header, 0, END_OF_CENTRAL_DIRECTORY_SIGNATURE);
+        position = putShort(header, position, 0);
+        position = putShort(header, position, 0);
+        position = putShort(header, position, entries);
+        position = putShort(header, position, entries);
+        position = putInt(header, position, centralDirectory.size());
+        position = putInt(header, position, (int) offset);
+        position = putShort(header, position, 0);
+        out.write(header, 0, position);
+    }
+
+    /**
+     * Releases the deflaters, leaving the underlying stream open.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        this.endDeflaters();
+    }
+
+    private void endDeflaters() {
+        Deflater deflater;
+        while ((deflater = deflaters.poll()) != null) {
+            deflater.end();
+        }
+    }
+
+    private int putEntryFields(byte[] bytes, int position, Entry entry, int nameLength) {
+        position = putShort(bytes, position, FLAGS);
+        position = putShort(bytes, position, DEFLATED);
+        position = putShort(bytes, position, dosTime);
+        position = putShort(bytes, position, dosDate);
+        position = putInt(bytes, position, (int) entry.crc());
+        position = putInt(bytes, position, entry.compressedSize());
+        position = putInt(bytes, position, entry.size());
+        return putShort(bytes, position, nameLength);
+    }
+
+    private static int putShort(byte[] bytes, int position, int value) {
+        bytes[position] = (byte) value;
+        bytes[position + 1] = (byte) (value >> 8);
+        return position + 2;
+    }
+
+    private static int putInt(byte[] bytes, int position, int value) {
+        putShort(bytes, position, value);
+        return putShort(bytes, position + 2, value >> 16);
+    }
+
+    /**
+     * A deflated entry, ready to be written.
+     */
+    public record Entry(String name, byte[] data, int compressedSize, int size, long crc) {
+    }
+}
@@ -0,0 +1,50 @@
+package org.imaginnovate.timesheet.services;
+
+import java.util.List;
+
+/**
+ * Fully computed content of one employee sheet, ready to be written without any further lookups.
+ */
+public class EmployeeSheet {
+
+    private final String name;
+    private final List<DayRow> rows;
+    private final double totalHours;
+    private final int leaveDays;
+
+    /**
+     * @param leaveDays working days of the month without any work described
+     */
+    public EmployeeSheet(String name, List<DayRow> rows, double totalHours, int leaveDays) {
+        this.name = name;
+        this.rows = rows;
+        this.totalHours = totalHours;
+        this.leaveDays = leaveDays;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public List<DayRow> getRows() {
+        return rows;
+    }
+
+    public double getTotalHours() {
+        return totalHours;
+    }
+
+    public int getLeaveDays() {
+        return leaveDays;
+    }
+
+    public enum DayType {
+        WORKING, WEEKEND, LEAVE, HOLIDAY
+    }
+
+    /**
+     * A day of the sheet. A {@code null} title, description or hours is written as a blank cell.
+     */
+    public record DayRow(String date, String title, String description, Double hours, DayType type) {
+    }
+}
@@ -1,88 +1,161 @@
 package org.imaginnovate.timesheet.services;
 
-import org.apache.poi.ss.usermodel.Cell;
-import org.apache.poi.ss.usermodel.Row;
-import org.apache.poi.ss.usermodel.Sheet;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
-
-import javax.swing.table.TableModel;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.Charset;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 
 public class FileProcessService {
 
     public static final String OUTPUT_FILE_PATH = "TimeSheet Report.xlsx";
 
-    private static final ConverterService converterService = new ConverterService();
+    private final ConverterService converterService;
+    private final boolean writeMetrics;
+
+    public FileProcessService() {
+        this(DefaultConverter.INSTANCE, Boolean.getBoolean("timesheet.metrics"));
+    }
+
+    public FileProcessService(ConverterService converterService) {
+        this(converterService, false);
+    }
 
-    public boolean process(TableModel tableModel) {
-        XSSFWorkbook workbook = this.tableModelToWorkbook(tableModel);
+    /**
+     * @param writeMetrics also write the timings and counts of each conversion to {@code <report>.metrics.json}
+     */
+    public FileProcessService(ConverterService converterService, boolean writeMetrics) {
+        this.converterService = converterService;
+        this.writeMetrics = writeMetrics;
+    }
+
+    public boolean process(Path csvFile) {
         try {
-            cleanup();
-            byte[] outPutBytes = converterService.generateFromCSV(workbook);
-            generateOutPutFile(outPutBytes);
+            checkNotInput(csvFile, Paths.get(OUTPUT_FILE_PATH));
+            cleanup(Paths.get(OUTPUT_FILE_PATH));
+            convert(csvFile, Paths.get(OUTPUT_FILE_PATH));
             return true;
-        } catch (IOException e) {
-            System.out.println(e.getMessage());
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Report generation failed! " + e.getMessage());
         }
         return false;
     }
 
-    private static void cleanup() {
+    /**
+     * Converts one raw time sheet into a report at the given path, removing the partial report on failure.
+     *
+     * @return the number of time sheet rows converted
+     */
+    public int convert(Path csvFile, Path outputFile) throws IOException {
+        checkNotInput(csvFile, outputFile);
+        ConversionMetrics metrics = new ConversionMetrics();
+        boolean succeeded = false;
         try {
-            boolean existingOutPutDeleted = Files.deleteIfExists(Paths.get(OUTPUT_FILE_PATH));
-            if (existingOutPutDeleted) {
-                System.out.println("Cleaning previous data..");
+            int rows = converterService.generateFromCSV(csvFile, outputFile, metrics);
+            succeeded = true;
+            // a multi-month input may have been written as one report per month, each already logged
+            if (Files.exists(outputFile)) {
+                System.out.println("Successfully generated time sheet report - " + outputFile);
+            }
+            return rows;
+        } catch (IOException | RuntimeException e) {
+            cleanup(outputFile);
+            throw e;
+        } finally {
+            metrics.finish(csvFile, outputFile, succeeded);
+            System.out.println("Stage timings - " + metrics);
+            if (writeMetrics) {
+                writeMetrics(metrics, outputFile);
             }
-        } catch (IOException e) {
-            System.err.println(e.getMessage());
         }
     }
 
-    private static void generateOutPutFile(byte[] outputStream) throws IOException {
-        if (outputStream != null && outputStream.length > 0) {
-            FileOutputStream fos = new FileOutputStream(OUTPUT_FILE_PATH);
-            fos.write(outputStream);
-            fos.close();
-            System.out.println("Successfully generated time sheet report - " + OUTPUT_FILE_PATH);
-        } else {
-            System.err.println("Report generation failed!");
+    /**
+     * Converts a raw time sheet streamed from {@code csv} into a single report streamed to {@code report}, an input
+     * spanning several months gets a group of sheets per month. Neither stream is closed.
+     *
+     * @return the number of time sheet rows converted
+     */
+    public int convert(Reader csv, OutputStream report) throws IOException {
+        return convert(csv, report, ConverterService.OutputFormat.XLSX);
+    }
+
+    /**
+     * Converts a raw time sheet streamed from {@code csv} into a single output of the given format streamed to
+     * {@code output}. Neither stream is closed.
+     *
+     * @return the number of time sheet rows converted
+     */
+    public int convert(Reader csv, OutputStream output, ConverterService.OutputFormat format) throws IOException {
+        ConversionMetrics metrics = new ConversionMetrics();
+        boolean succeeded = false;
+        try {
+            int rows = converterService.generateFromCSV(csv, output, metrics, format);
+            succeeded = true;
+            return rows;
+        } finally {
+            metrics.finish(null, null, succeeded);
+            System.out.println("Stage timings - " + metrics);
         }
     }
 
-    private XSSFWorkbook tableModelToWorkbook(TableModel model) {
-        XSSFWorkbook workbook = new XSSFWorkbook();
-        Sheet sheet = workbook.createSheet("data");
+    /**
+     * @return the file name of the report of a raw time sheet, its own name with the {@code .xlsx} extension
+     */
+    public static String reportName(Path inputFile) {
+        String fileName = inputFile.getFileName().toString();
+        int extension = fileName.lastIndexOf('.');
+        return (extension > 0 ? fileName.substring(0, extension) : fileName) + ".xlsx";
+    }
 
-        // Create header row
-        Row headerRow = sheet.createRow(0);
-        for (int col = 0; col < model.getColumnCount(); col++) {
-            Cell cell = headerRow.createCell(col);
-            cell.setCellValue(model.getColumnName(col));
-        }
+    /**
+     * @return the charset CSV files are read with
+     */
+    public Charset getInputCharset() {
+        return converterService.getInputCharset();
+    }
 
-        // Create data rows
-        for (int row = 0; row < model.getRowCount(); row++) {
-            Row excelRow = sheet.createRow(row + 1);
-            for (int col = 0; col < model.getColumnCount(); col++) {
-                Object value = model.getValueAt(row, col);
-                Cell cell = excelRow.createCell(col);
-                if (value != null) {
-                    cell.setCellValue(value.toString());
-                } else {
-                    cell.setCellValue("");
-                }
-            }
+    private static void writeMetrics(ConversionMetrics metrics, Path outputFile) {
+        String fileName = outputFile.getFileName().toString();
+        int extension = fileName.lastIndexOf('.');
+        Path metricsFile = outputFile.resolveSibling((extension > 0 ? fileName.substring(0, extension) : fileName) + ".metrics.json");
+        try {
+            metrics.writeJson(metricsFile);
+        } catch (IOException e) {
+            System.err.println("Unable to write metrics " + metricsFile + " - " + e.getMessage());
         }
+    }
 
-        // Optionally, auto-size columns
-        for (int col = 0; col < model.getColumnCount(); col++) {
-            sheet.autoSizeColumn(col);
+    /**
+     * Refuses to write a report over its own input, which an {@code .xlsx} time sheet converted in place would be.
+     */
+    private static void checkNotInput(Path inputFile, Path outputFile) throws IOException {
+        if (Files.exists(outputFile) && Files.isSameFile(inputFile, outputFile)) {
+            throw new IllegalArgumentException("The report would overwrite its input " + inputFile);
         }
+    }
 
-        return workbook;
+    private static void cleanup(Path outputFile) {
+        try {
+            boolean existingOutPutDeleted = Files.deleteIfExists(outputFile);
+            if (existingOutPutDeleted) {
+                System.out.println("Cleaning previous data..");
+            }
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+        }
     }
 
+    /**
+     * Holds the window's converter, created on first use so the command line modes never set it up.
+     */
+    private static class DefaultConverter {
+
+        // the window reports a single file, so a multi-month input gets its sheets grouped by month in it
+        private static final ConverterService INSTANCE = ConverterService.builder()
+                .monthLayout(ConverterService.MonthLayout.SHEETS_PER_MONTH)
+                .build();
+    }
 }
@@ -0,0 +1,310 @@
+package org.imaginnovate.timesheet.services;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+/**
+ * Reads a raw time sheet CSV file by memory-mapping it and tokenizing chunks of it in parallel, decoding only the
+ * fields the converter uses. Rows are handed to the consumer in file order.
+ * <p>
+ * Fields follow RFC 4180: a quoted field may hold separators, line breaks and doubled quotes. Since every quote
+ * toggles the quoted state, the state at any offset is the parity of the quotes before it. A first parallel pass
+ * counts the quotes of each chunk and a prefix over those parities moves every chunk start to a real record boundary.
+ */
+public class MappedCsvTimeSheetReader {
+
+    private static final long MIN_CHUNK_SIZE = 4L << 20;
+    private static final long MAX_CHUNK_SIZE = 256L << 20;
+    private static final byte QUOTE = '"';
+    private static final byte SEPARATOR = ',';
+    private static final byte LINE_FEED = '\n';
+    private static final byte CARRIAGE_RETURN = '\r';
+    private static final byte[] UTF8_BOM = {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF};
+    private static final String STRUCTURAL_CHARACTERS = "\",\r\n";
+
+    private final CsvTimeSheetReader rowReader;
+    private final TimeSheetSchema schema;
+    private final Charset charset;
+    private final ForkJoinPool pool;
+
+    public MappedCsvTimeSheetReader(DateDecoder dateDecoder, Charset charset, ForkJoinPool pool) {
+        this(dateDecoder, TimeSheetSchema.DEFAULT, charset, pool);
+    }
+
+    public MappedCsvTimeSheetReader(DateDecoder dateDecoder, TimeSheetSchema schema, Charset charset, ForkJoinPool pool) {
+        this.rowReader = new CsvTimeSheetReader(dateDecoder, schema);
+        this.schema = schema;
+        this.charset = charset;
+        this.pool = pool;
+    }
+
+    /**
+     * @return whether files in the charset can be tokenized as bytes, i.e. quotes, separators and line breaks are
+     * their ASCII bytes and never part of another character
+     */
+    public static boolean supports(Charset charset) {
+        return charset.canEncode() && Arrays.equals(STRUCTURAL_CHARACTERS.getBytes(charset),
+                STRUCTURAL_CHARACTERS.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    public void read(Path file, Consumer<TimeSheetRow> consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long dataStart = this.dataStart(channel);
+            if (dataStart >= size) {
+                return;
+            }
+            long[] rangeStarts = this.findRecordAlignedRanges(channel, dataStart, size);
+            ByteBuffer firstRange = map(channel, rangeStarts[0], rangeEnd(rangeStarts, 0, size));
+            Columns columns = Columns.of(schema.bind(this.readHeader(firstRange)));
+
+            // ranges are tokenized ahead in a bounded window and consumed in file order
+            int window = pool.getParallelism() * 2;
+            List<ForkJoinTask<List<TimeSheetRow>>> tasks = new ArrayList<>(Collections.nCopies(rangeStarts.length, null));
+            for (int range = 0; range < rangeStarts.length; range++) {
+                for (int ahead = range; ahead < Math.min(range + window, rangeStarts.length); ahead++) {
+                    if (tasks.get(ahead) == null) {
+                        int rangeIndex = ahead;
+                        tasks.set(ahead, pool.submit(() -> this.tokenize(rangeIndex == 0 ? firstRange
+                                : map(channel, rangeStarts[rangeIndex], rangeEnd(rangeStarts, rangeIndex, size)), columns, rangeIndex == 0)));
+                    }
+                }
+                tasks.get(range).join().forEach(consumer);
+                tasks.set(range, null);
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private long dataStart(FileChannel channel) throws IOException {
+        ByteBuffer head = ByteBuffer.allocate(UTF8_BOM.length);
+        while (head.hasRemaining() && channel.read(head, head.position()) > 0) {
+            // reading the first bytes only
+        }
+        boolean byteOrderMark = charset.equals(StandardCharsets.UTF_8) && !head.hasRemaining()
+                && Arrays.equals(head.array(), UTF8_BOM);
+        return byteOrderMark ? UTF8_BOM.length : 0;
+    }
+
+    /**
+     * @return the start offset of every range, each range running up to the next start and starting a record
+     */
+    private long[] findRecordAlignedRanges(FileChannel channel, long dataStart, long size) {
+        long chunkSize = Math.min(Math.max((size - dataStart) / (pool.getParallelism() * 4L), MIN_CHUNK_SIZE), MAX_CHUNK_SIZE);
+        int chunkCount = (int) ((size - dataStart + chunkSize - 1) / chunkSize);
+        ChunkScan[] scans = pool.submit(() -> IntStream.range(0, chunkCount).parallel()
+                .mapToObj(chunk -> scanChunk(channel, dataStart + chunk * chunkSize, Math.min(dataStart + (chunk + 1) * chunkSize, size)))
+                .toArray(ChunkScan[]::new)).join();
+
+        long[] starts = new long[chunkCount];
+        int rangeCount = 0;
+        starts[rangeCount++] = dataStart;
+        boolean inQuotes = scans[0].oddQuotes();
+        for (int chunk = 1; chunk < chunkCount; chunk++) {
+            long recordStart = inQuotes ? scans[chunk].recordStartInsideQuotes() : scans[chunk].recordStartOutsideQuotes();
+            // a chunk without a record boundary of its own belongs to the range before it
+            if (recordStart >= 0 && recordStart < size) {
+                starts[rangeCount++] = recordStart;
+            }
+            inQuotes ^= scans[chunk].oddQuotes();
+        }
+        return Arrays.copyOf(starts, rangeCount);
+    }
+
+    private static ChunkScan scanChunk(FileChannel channel, long start, long end) {
+        ByteBuffer chunk = map(channel, start, end);
+        int limit = chunk.limit();
+        boolean oddQuotes = false;
+        long recordStartOutsideQuotes = -1;
+        long recordStartInsideQuotes = -1;
+        for (int i = 0; i < limit; i++) {
+            byte b = chunk.get(i);
+            if (b == QUOTE) {
+                oddQuotes = !oddQuotes;
+            } else if (b == LINE_FEED) {
+                // the first line break outside quotes, for either quoted state the chunk may start in
+                if (!oddQuotes && recordStartOutsideQuotes < 0) {
+                    recordStartOutsideQuotes = start + i + 1;
+                } else if (oddQuotes && recordStartInsideQuotes < 0) {
+                    recordStartInsideQuotes = start + i + 1;
+                }
+            }
+        }
+        return new ChunkScan(oddQuotes, recordStartOutsideQuotes, recordStartInsideQuotes);
+    }
+
+    private String[] readHeader(ByteBuffer range) {
+        List<String> header = new ArrayList<>();
+        FieldDecoder decoder = new FieldDecoder(range, charset);
+        int fieldStart = 0;
+        boolean inQuotes = false;
+        for (int i = 0; i <= range.limit(); i++) {
+            byte b = i < range.limit() ? range.get(i) : LINE_FEED;
+            if (b == QUOTE) {
+                inQuotes = !inQuotes;
+            } else if (!inQuotes && (b == SEPARATOR || b == LINE_FEED)) {
+                header.add(decoder.decode(fieldStart, i));
+                fieldStart = i + 1;
+                if (b == LINE_FEED) {
+                    break;
+                }
+            }
+        }
+        return header.toArray(new String[0]);
+    }
+
+    private List<TimeSheetRow> tokenize(ByteBuffer range, Columns columns, boolean skipHeader) {
+        List<TimeSheetRow> rows = new ArrayList<>();
+        FieldDecoder decoder = new FieldDecoder(range, charset);
+        String[] values = new String[Columns.COUNT];
+        int limit = range.limit();
+        int field = 0;
+        int fieldStart = 0;
+        boolean inQuotes = false;
+        boolean header = skipHeader;
+        for (int i = 0; i <= limit; i++) {
+            byte b;
+            if (i < limit) {
+                b = range.get(i);
+            } else if (field > 0 || fieldStart < limit) {
+                // the last record of the file has no line break
+                b = LINE_FEED;
+            } else {
+                break;
+            }
+            if (b == QUOTE) {
+                inQuotes = !inQuotes;
+            } else if (!inQuotes && (b == SEPARATOR || b == LINE_FEED)) {
+                if (!header) {
+                    columns.assign(field, fieldStart, i, decoder, values);
+                }
+                field++;
+                fieldStart = i + 1;
+                if (b == LINE_FEED) {
+                    if (!header) {
+                        TimeSheetRow row = rowReader.toRow(values[Columns.NAME], values[Columns.DATE], values[Columns.TITLE],
+                                values[Columns.DESCRIPTION], values[Columns.HOURS]);
+                        if (row != null) {
+                            rows.add(row);
+                        }
+                    }
+                    Arrays.fill(values, null);
+                    header = false;
+                    field = 0;
+                }
+            }
+        }
+        return rows;
+    }
+
+    private static long rangeEnd(long[] rangeStarts, int range, long size) {
+        return range + 1 < rangeStarts.length ? rangeStarts[range + 1] : size;
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, long start, long end) {
+        if (end - start > Integer.MAX_VALUE) {
+            throw new UncheckedIOException(new IOException("CSV record spanning more than 2 GB at offset " + start));
+        }
+        try {
+            return channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Quote parity of a chunk and where its first record would start, for a chunk starting outside or inside quotes.
+     */
+    private record ChunkScan(boolean oddQuotes, long recordStartOutsideQuotes, long recordStartInsideQuotes) {
+    }
+
+    /**
+     * Column index of each field the converter reads, in the order of {@link TimeSheetSchema.Field}.
+     */
+    private record Columns(int[] indexes) {
+
+        static final int NAME = TimeSheetSchema.Field.NAME.ordinal();
+        static final int DATE = TimeSheetSchema.Field.DATE.ordinal();
+        static final int TITLE = TimeSheetSchema.Field.TITLE.ordinal();
+        static final int DESCRIPTION = TimeSheetSchema.Field.DESCRIPTION.ordinal();
+        static final int HOURS = TimeSheetSchema.Field.HOURS.ordinal();
+        static final int COUNT = TimeSheetSchema.Field.values().length;
+
+        static Columns of(TimeSheetSchema.Binding binding) {
+            int[] indexes = new int[COUNT];
+            for (TimeSheetSchema.Field field : TimeSheetSchema.Field.values()) {
+                indexes[field.ordinal()] = binding.indexOf(field);
+            }
+            return new Columns(indexes);
+        }
+
+        void assign(int field, int start, int end, FieldDecoder decoder, String[] values) {
+            String value = null;
+            for (int column = 0; column < COUNT; column++) {
+                if (indexes[column] == field) {
+                    if (value == null) {
+                        value = decoder.decode(start, end);
+                    }
+                    values[column] = value;
+                }
+            }
+        }
+    }
+
+    /**
+     * Turns the raw bytes of a field into its value, unquoting it and dropping the carriage returns of CRLF breaks.
+     */
+    private static class FieldDecoder {
+
+        private final ByteBuffer range;
+        private final Charset charset;
+        private byte[] scratch = new byte[256];
+
+        FieldDecoder(ByteBuffer range, Charset charset) {
+            this.range = range;
+            this.charset = charset;
+        }
+
+        String decode(int start, int end) {
+            if (end - start > scratch.length) {
+                scratch = new byte[Math.max(end - start, scratch.length * 2)];
+            }
+            int length = 0;
+            boolean inQuotes = false;
+            for (int i = start; i < end; i++) {
+                byte b = range.get(i);
+                if (b == QUOTE) {
+                    if (inQuotes && i + 1 < end && range.get(i + 1) == QUOTE) {
+                        scratch[length++] = QUOTE;
+                        i++;
+                    } else {
+                        inQuotes = !inQuotes;
+                    }
+                } else if (b != CARRIAGE_RETURN || !this.isLineBreakAt(i + 1)) {
+                    scratch[length++] = b;
+                }
+            }
+            return new String(scratch, 0, length, charset);
+        }
+
+        private boolean isLineBreakAt(int index) {
+            return index >= range.limit() || range.get(index) == LINE_FEED;
+        }
+    }
+}
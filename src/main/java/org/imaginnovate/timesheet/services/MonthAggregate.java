@@ -0,0 +1,15 @@
+package org.imaginnovate.timesheet.services;
+
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * Everything the outputs of one month are written from, computed once whatever formats are requested.
+ *
+ * @param days           the working days, weekends and holidays of the month,
+ *                       {@link WorkingDayCalendar.MonthDays#NONE} for an empty time sheet
+ * @param employeeNames  total hours by employee name, as shown on the summary
+ * @param employeeSheets the day rows of every employee, sorted by name
+ */
+record MonthAggregate(TimeSheetTable table, WorkingDayCalendar.MonthDays days, TreeMap<String, Double> employeeNames, List<EmployeeSheet> employeeSheets) {
+}
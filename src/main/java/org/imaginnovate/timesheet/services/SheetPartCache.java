@@ -0,0 +1,268 @@
+package org.imaginnovate.timesheet.services;
+
+import org.imaginnovate.timesheet.services.EmployeeSheet.DayRow;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * On-disk cache of the deflated employee sheet parts of {@link ConverterService.OutputEngine#SPREADSHEETML} reports,
+ * one file per month holding the sheets of its last conversion. A part is keyed by a hash of the sheet content, so a
+ * re-exported CSV only renders and deflates the sheets of employees whose entries changed; the others are copied into
+ * the zip as they are. Old months are evicted by count and then by total size.
+ */
+public class SheetPartCache {
+
+    // bump whenever the sheet XML, the style table or the file layout changes, so older parts are ignored
+    private static final int FORMAT_VERSION = 1;
+    private static final String EXTENSION = ".parts";
+
+    private final Path directory;
+    private final int maxMonths;
+    private final long maxBytes;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param maxMonths most recent months kept in the cache
+     * @param maxBytes  size the cache is trimmed to by dropping its oldest months, the months just converted are always kept
+     */
+    public SheetPartCache(Path directory, int maxMonths, long maxBytes) {
+        this.directory = directory;
+        this.maxMonths = maxMonths;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @return the digest of everything the sheet part is written from
+     */
+    public static byte[] contentHash(EmployeeSheet sheet, int compressionLevel) {
+        MessageDigest digest = sha256();
+        digest.update(intBytes(FORMAT_VERSION));
+        digest.update(intBytes(compressionLevel));
+        digest.update(textBytes(sheet.getName()));
+        digest.update(ByteBuffer.allocate(Double.BYTES).putDouble(sheet.getTotalHours()).array());
+        for (DayRow row : sheet.getRows()) {
+            digest.update(textBytes(row.date()));
+            digest.update(textBytes(row.title()));
+            digest.update(textBytes(row.description()));
+            digest.update(ByteBuffer.allocate(Double.BYTES).putDouble(row.hours() == null ? Double.NaN : row.hours()).array());
+            digest.update(intBytes(row.type().ordinal()));
+        }
+        return digest.digest();
+    }
+
+    /**
+     * @return the parts cached for the month, none when it has no readable entry
+     */
+    public MonthParts load(YearMonth month) {
+        Map<String, CachedPart> parts = new HashMap<>();
+        Path file = this.monthPath(month);
+        if (Files.isRegularFile(file)) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+                if (in.readInt() == FORMAT_VERSION) {
+                    for (int count = in.readInt(); count > 0; count--) {
+                        String name = in.readUTF();
+                        byte[] contentHash = in.readNBytes(in.readInt());
+                        int size = in.readInt();
+                        long crc = in.readLong();
+                        byte[] data = in.readNBytes(in.readInt());
+                        parts.put(name, new CachedPart(contentHash, new DeflatedZipWriter.Entry(name, data, data.length, size, crc)));
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Ignoring unreadable cache entry " + file + " - " + e.getMessage());
+                parts.clear();
+            }
+        }
+        return new MonthParts(month, parts);
+    }
+
+    /**
+     * Replaces the month's entry with the parts of the report just written, once their deflating is done. An entry all
+     * of whose parts were reused is left as it is.
+     */
+    public void save(MonthParts parts) {
+        if (!parts.isChanged()) {
+            return;
+        }
+        Path file = this.monthPath(parts.month);
+        try {
+            Files.createDirectories(directory);
+            // written aside and moved in place, so concurrent runs never read a partial entry
+            Path temporary = Files.createTempFile(directory, "month", ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                out.writeInt(FORMAT_VERSION);
+                out.writeInt(parts.written.size());
+                for (Map.Entry<String, PendingPart> written : parts.written.entrySet()) {
+                    DeflatedZipWriter.Entry entry = written.getValue().part().get();
+                    out.writeUTF(written.getKey());
+                    out.writeInt(written.getValue().contentHash().length);
+                    out.write(written.getValue().contentHash());
+                    out.writeInt(entry.size());
+                    out.writeLong(entry.crc());
+                    out.writeInt(entry.compressedSize());
+                    out.write(entry.data(), 0, entry.compressedSize());
+                }
+            } catch (IOException | RuntimeException e) {
+                Files.deleteIfExists(temporary);
+                throw e;
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Unable to cache the sheets of " + parts.month + " - " + e.getMessage());
+        }
+    }
+
+    /**
+     * Drops the months beyond the configured count, then the oldest months until the cache fits its size limit.
+     */
+    public synchronized void evict(Collection<YearMonth> currentMonths) {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        try {
+            TreeMap<YearMonth, Path> months = new TreeMap<>(Comparator.reverseOrder());
+            try (Stream<Path> entries = Files.list(directory)) {
+                entries.filter(Files::isRegularFile).forEach(path -> {
+                    String fileName = path.getFileName().toString();
+                    if (fileName.endsWith(EXTENSION)) {
+                        try {
+                            months.put(YearMonth.parse(fileName.substring(0, fileName.length() - EXTENSION.length())), path);
+                        } catch (DateTimeParseException e) {
+                            // not a month of this cache
+                        }
+                    }
+                });
+            }
+            long totalBytes = 0;
+            Map<YearMonth, Long> monthBytes = new HashMap<>();
+            for (Map.Entry<YearMonth, Path> month : months.entrySet()) {
+                long bytes = Files.size(month.getValue());
+                monthBytes.put(month.getKey(), bytes);
+                totalBytes += bytes;
+            }
+            int kept = 0;
+            Set<YearMonth> evicted = new HashSet<>();
+            for (Map.Entry<YearMonth, Path> month : months.entrySet()) {
+                boolean current = currentMonths.contains(month.getKey());
+                if (!current && kept >= maxMonths) {
+                    totalBytes -= this.deleteMonth(month.getValue(), monthBytes.get(month.getKey()));
+                    evicted.add(month.getKey());
+                } else {
+                    kept++;
+                }
+            }
+            for (Map.Entry<YearMonth, Path> month : months.descendingMap().entrySet()) {
+                if (totalBytes <= maxBytes) {
+                    break;
+                }
+                if (!currentMonths.contains(month.getKey()) && !evicted.contains(month.getKey())) {
+                    totalBytes -= this.deleteMonth(month.getValue(), monthBytes.get(month.getKey()));
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Unable to evict old months from the sheet cache - " + e.getMessage());
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "hits=" + hits.sum() + ", misses=" + misses.sum();
+    }
+
+    private Path monthPath(YearMonth month) {
+        return directory.resolve(month + EXTENSION);
+    }
+
+    private long deleteMonth(Path monthFile, long bytes) throws IOException {
+        Files.deleteIfExists(monthFile);
+        System.out.println("Evicted " + monthFile.getFileName() + " from the sheet cache");
+        return bytes;
+    }
+
+    private static byte[] textBytes(String text) {
+        if (text == null) {
+            return intBytes(-1);
+        }
+        // length prefixed, so neighbouring texts cannot run into each other
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        return ByteBuffer.allocate(Integer.BYTES + bytes.length).putInt(bytes.length).put(bytes).array();
+    }
+
+    private static byte[] intBytes(int value) {
+        return ByteBuffer.allocate(Integer.BYTES).putInt(value).array();
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private record CachedPart(byte[] contentHash, DeflatedZipWriter.Entry part) {
+    }
+
+    private record PendingPart(byte[] contentHash, Supplier<DeflatedZipWriter.Entry> part) {
+    }
+
+    /**
+     * The cached sheet parts of one month and the parts of the report being written, keyed by employee name.
+     * Not thread safe, a month is written by a single thread.
+     */
+    public final class MonthParts {
+
+        private final YearMonth month;
+        private final Map<String, CachedPart> cached;
+        private final Map<String, PendingPart> written = new LinkedHashMap<>();
+        private boolean rendered;
+
+        private MonthParts(YearMonth month, Map<String, CachedPart> cached) {
+            this.month = month;
+            this.cached = cached;
+        }
+
+        /**
+         * @return the cached part of the employee's sheet if it was written from the same content, {@code null} otherwise;
+         * a part returned is kept for the next run
+         */
+        public DeflatedZipWriter.Entry get(String name, byte[] contentHash) {
+            CachedPart cachedPart = cached.get(name);
+            if (cachedPart == null || !Arrays.equals(cachedPart.contentHash(), contentHash)) {
+                misses.increment();
+                return null;
+            }
+            hits.increment();
+            written.put(name, new PendingPart(contentHash, cachedPart::part));
+            return cachedPart.part();
+        }
+
+        /**
+         * Records the part just written for the employee's sheet, saved once it is deflated.
+         */
+        public void put(String name, byte[] contentHash, ForkJoinTask<DeflatedZipWriter.Entry> part) {
+            written.put(name, new PendingPart(contentHash, part::join));
+            rendered = true;
+        }
+
+        /**
+         * @return whether the parts written differ from the cached ones
+         */
+        private boolean isChanged() {
+            return rendered || written.size() != cached.size();
+        }
+    }
+}
@@ -0,0 +1,481 @@
+package org.imaginnovate.timesheet.services;
+
+import org.apache.poi.ss.usermodel.HorizontalAlignment;
+import org.apache.poi.ss.usermodel.VerticalAlignment;
+import org.apache.poi.ss.util.WorkbookUtil;
+import org.imaginnovate.timesheet.services.CellStylePool.StyleSpec;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.zip.Deflater;
+
+/**
+ * Writes an XLSX package straight to a zip stream, without POI's object model. Rows are written in order as sheet
+ * XML from a reusable byte buffer and strings are inline, so a cell costs a few bytes of output and no objects. Styles
+ * are interned by their attributes, the workbook parts listing them and the sheets are written once all sheets are done.
+ * <p>
+ * Each finished part is deflated on the pool while the next ones are written, and the zip is assembled in part order
+ * from the deflated buffers, so compressing a report with many sheets takes about as long as its largest sheets.
+ */
+public class SpreadsheetMLWriter implements AutoCloseable {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // sheet names longer than this are cut, as Excel does
+    private static final int MAX_SHEET_NAME_LENGTH = 31;
+    private static final String XML_DECLARATION = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n";
+    private static final String MAIN_NAMESPACE = "http://schemas.openxmlformats.org/spreadsheetml/2006/main";
+    private static final String RELATIONSHIPS_NAMESPACE = "http://schemas.openxmlformats.org/package/2006/relationships";
+    private static final String DOCUMENT_RELATIONSHIPS = "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+    private static final String CALIBRI = "Calibri";
+
+    private final DeflatedZipWriter zip;
+    private final ForkJoinPool pool;
+    private final int maxPendingParts;
+    private final Deque<ForkJoinTask<DeflatedZipWriter.Entry>> pendingParts = new ArrayDeque<>();
+    private final Queue<byte[]> spareBuffers = new ConcurrentLinkedQueue<>();
+    private final XmlBuffer xml = new XmlBuffer();
+    private final List<String> sheetNames = new ArrayList<>();
+    private final Set<String> sheetNameKeys = new HashSet<>();
+    private final Map<StyleSpec, Integer> styleIndexes = new HashMap<>();
+    private final List<StyleSpec> styles = new ArrayList<>();
+    private int rowNumber;
+    private boolean inSheet;
+    private boolean inRow;
+
+    public SpreadsheetMLWriter(OutputStream outputStream) {
+        this(outputStream, ForkJoinPool.commonPool(), Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * @param pool             pool the parts are deflated on
+     * @param compressionLevel deflate level of the parts, from {@link Deflater#BEST_SPEED} to
+     *                         {@link Deflater#BEST_COMPRESSION} or {@link Deflater#DEFAULT_COMPRESSION}
+     */
+    public SpreadsheetMLWriter(OutputStream outputStream, ForkJoinPool pool, int compressionLevel) {
+        this.zip = new DeflatedZipWriter(outputStream, compressionLevel);
+        this.pool = pool;
+        this.maxPendingParts = pool.getParallelism() * 2;
+    }
+
+    /**
+     * @return the index cells with the given look are written with; the style is added to the workbook on first use
+     */
+    public int style(StyleSpec spec) {
+        Integer index = styleIndexes.get(spec);
+        if (index == null) {
+            styles.add(spec);
+            // index 0 is the default style of the workbook
+            index = styles.size();
+            styleIndexes.put(spec, index);
+        }
+        return index;
+    }
+
+    public int getStyleCount() {
+        return styles.size();
+    }
+
+    public int getSheetCount() {
+        return sheetNames.size();
+    }
+
+    /**
+     * Starts the next sheet, ending the current one.
+     *
+     * @param columnWidths width of each column in 1/256th of a character, 0 keeps the default width
+     */
+    public void startSheet(String name, int[] columnWidths) throws IOException {
+        this.endSheet();
+        this.addSheetName(name);
+        xml.ascii(XML_DECLARATION).ascii("<worksheet xmlns=\"" + MAIN_NAMESPACE + "\">")
+                .ascii("<sheetViews><sheetView workbookViewId=\"0\"/></sheetViews>")
+                .ascii("<sheetFormatPr defaultRowHeight=\"15.0\"/>");
+        boolean columns = false;
+        for (int column = 0; column < columnWidths.length; column++) {
+            if (columnWidths[column] > 0) {
+                if (!columns) {
+                    xml.ascii("<cols>");
+                    columns = true;
+                }
+                xml.ascii("<col min=\"").number(column + 1).ascii("\" max=\"").number(column + 1)
+                        .ascii("\" width=\"").number(columnWidths[column] / 256.0).ascii("\" customWidth=\"1\"/>");
+            }
+        }
+        if (columns) {
+            xml.ascii("</cols>");
+        }
+        xml.ascii("<sheetData>");
+        rowNumber = 0;
+        inSheet = true;
+    }
+
+    /**
+     * Starts the row at the zero based index, rows have to be written in order.
+     */
+    public void startRow(int rowIndex) throws IOException {
+        this.endRow();
+        if (rowIndex < rowNumber) {
+            throw new IllegalArgumentException("Row " + rowIndex + " written after row " + (rowNumber - 1));
+        }
+        rowNumber = rowIndex + 1;
+        xml.ascii("<row r=\"").number(rowNumber).ascii("\">");
+        inRow = true;
+    }
+
+    public void stringCell(int column, String value, int style) throws IOException {
+        this.startCell(column, style);
+        xml.ascii(" t=\"inlineStr\"><is><t");
+        if (!value.isEmpty() && (Character.isWhitespace(value.charAt(0)) || Character.isWhitespace(value.charAt(value.length() - 1)))) {
+            xml.ascii(" xml:space=\"preserve\"");
+        }
+        xml.ascii(">").text(value).ascii("</t></is></c>");
+    }
+
+    public void numberCell(int column, double value, int style) throws IOException {
+        this.startCell(column, style);
+        xml.ascii("><v>").number(value).ascii("</v></c>");
+    }
+
+    public void blankCell(int column, int style) throws IOException {
+        this.startCell(column, style);
+        xml.ascii("/>");
+    }
+
+    /**
+     * Ends the current sheet.
+     *
+     * @return the part of the sheet, being deflated on the pool, {@code null} when no sheet was started
+     */
+    public ForkJoinTask<DeflatedZipWriter.Entry> endSheet() throws IOException {
+        if (!inSheet) {
+            return null;
+        }
+        this.endRow();
+        xml.ascii("</sheetData><pageMargins left=\"0.7\" right=\"0.7\" top=\"0.75\" bottom=\"0.75\" header=\"0.3\" footer=\"0.3\"/>")
+                .ascii("</worksheet>");
+        inSheet = false;
+        return this.addPart("xl/worksheets/sheet" + sheetNames.size() + ".xml");
+    }
+
+    /**
+     * Adds a sheet from the deflated part of a sheet written earlier, ending the current sheet. The part has to use
+     * the styles this writer was given in the same order.
+     */
+    public void copySheet(String name, DeflatedZipWriter.Entry part) throws IOException {
+        this.endSheet();
+        this.addSheetName(name);
+        DeflatedZipWriter.Entry entry = new DeflatedZipWriter.Entry("xl/worksheets/sheet" + sheetNames.size() + ".xml", part.data(),
+                part.compressedSize(), part.size(), part.crc());
+        ForkJoinTask<DeflatedZipWriter.Entry> copied = ForkJoinTask.adapt(() -> entry);
+        copied.invoke();
+        this.addPendingPart(copied);
+    }
+
+    /**
+     * Writes the workbook parts and the end of the zip stream, leaving the underlying stream open.
+     */
+    public void finish() throws IOException {
+        this.endSheet();
+        this.writeContentTypes();
+        this.writePart("_rels/.rels", XML_DECLARATION + "<Relationships xmlns=\"" + RELATIONSHIPS_NAMESPACE + "\">"
+                + "<Relationship Id=\"rId1\" Type=\"" + DOCUMENT_RELATIONSHIPS + "/officeDocument\" Target=\"xl/workbook.xml\"/>"
+                + "</Relationships>");
+        this.writeWorkbook();
+        this.writeWorkbookRelationships();
+        this.writeStyles();
+        while (!pendingParts.isEmpty()) {
+            zip.write(pendingParts.poll().join());
+        }
+        zip.finish();
+    }
+
+    /**
+     * Waits for the parts still being deflated and releases the deflaters, also when the workbook was not finished.
+     * The underlying stream is left open.
+     */
+    @Override
+    public void close() {
+        try {
+            while (!pendingParts.isEmpty()) {
+                pendingParts.poll().quietlyJoin();
+            }
+        } finally {
+            zip.close();
+        }
+    }
+
+    private void endRow() throws IOException {
+        if (inRow) {
+            xml.ascii("</row>");
+            inRow = false;
+        }
+    }
+
+    private void startCell(int column, int style) throws IOException {
+        if (!inRow) {
+            throw new IllegalStateException("Cell written outside of a row");
+        }
+        xml.ascii("<c r=\"").columnName(column).number(rowNumber).ascii("\"");
+        if (style != 0) {
+            xml.ascii(" s=\"").number(style).ascii("\"");
+        }
+    }
+
+    private void addSheetName(String name) {
+        String sheetName = name.length() > MAX_SHEET_NAME_LENGTH ? name.substring(0, MAX_SHEET_NAME_LENGTH) : name;
+        WorkbookUtil.validateSheetName(sheetName);
+        // Excel compares sheet names ignoring case
+        if (!sheetNameKeys.add(sheetName.toUpperCase(Locale.ROOT))) {
+            throw new IllegalArgumentException("The workbook already contains a sheet named '" + sheetName + "'");
+        }
+        sheetNames.add(sheetName);
+    }
+
+    private void writeContentTypes() throws IOException {
+        xml.ascii(XML_DECLARATION).ascii("<Types xmlns=\"http://schemas.openxmlformats.org/package/2006/content-types\">")
+                .ascii("<Default Extension=\"rels\" ContentType=\"application/vnd.openxmlformats-package.relationships+xml\"/>")
+                .ascii("<Default Extension=\"xml\" ContentType=\"application/xml\"/>")
+                .ascii("<Override PartName=\"/xl/workbook.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.sheet.main+xml\"/>")
+                .ascii("<Override PartName=\"/xl/styles.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.styles+xml\"/>");
+        for (int sheet = 1; sheet <= sheetNames.size(); sheet++) {
+            xml.ascii("<Override PartName=\"/xl/worksheets/sheet").number(sheet)
+                    .ascii(".xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.worksheet+xml\"/>");
+        }
+        xml.ascii("</Types>");
+        this.addPart("[Content_Types].xml");
+    }
+
+    private void writeWorkbook() throws IOException {
+        xml.ascii(XML_DECLARATION).ascii("<workbook xmlns=\"" + MAIN_NAMESPACE + "\" xmlns:r=\"" + DOCUMENT_RELATIONSHIPS + "\">")
+                .ascii("<bookViews><workbookView activeTab=\"0\"/></bookViews><sheets>");
+        for (int sheet = 1; sheet <= sheetNames.size(); sheet++) {
+            xml.ascii("<sheet name=\"").text(sheetNames.get(sheet - 1)).ascii("\" sheetId=\"").number(sheet)
+                    .ascii("\" r:id=\"rId").number(sheet).ascii("\"/>");
+        }
+        xml.ascii("</sheets></workbook>");
+        this.addPart("xl/workbook.xml");
+    }
+
+    private void writeWorkbookRelationships() throws IOException {
+        xml.ascii(XML_DECLARATION).ascii("<Relationships xmlns=\"" + RELATIONSHIPS_NAMESPACE + "\">");
+        for (int sheet = 1; sheet <= sheetNames.size(); sheet++) {
+            xml.ascii("<Relationship Id=\"rId").number(sheet).ascii("\" Type=\"" + DOCUMENT_RELATIONSHIPS + "/worksheet\" Target=\"worksheets/sheet")
+                    .number(sheet).ascii(".xml\"/>");
+        }
+        xml.ascii("<Relationship Id=\"rId").number(sheetNames.size() + 1)
+                .ascii("\" Type=\"" + DOCUMENT_RELATIONSHIPS + "/styles\" Target=\"styles.xml\"/>")
+                .ascii("</Relationships>");
+        this.addPart("xl/_rels/workbook.xml.rels");
+    }
+
+    private void writeStyles() throws IOException {
+        // fills 0 and 1 are reserved by Excel, solid fills follow in order of first use
+        List<String> fillColours = new ArrayList<>();
+        for (StyleSpec spec : styles) {
+            if (spec.fillColour() != null && !fillColours.contains(spec.fillColour())) {
+                fillColours.add(spec.fillColour());
+            }
+        }
+        xml.ascii(XML_DECLARATION).ascii("<styleSheet xmlns=\"" + MAIN_NAMESPACE + "\">")
+                .ascii("<fonts count=\"3\">")
+                .ascii("<font><sz val=\"11\"/><color indexed=\"8\"/><name val=\"" + CALIBRI + "\"/><family val=\"2\"/><scheme val=\"minor\"/></font>")
+                .ascii("<font><sz val=\"11\"/><name val=\"" + CALIBRI + "\"/></font>")
+                .ascii("<font><b/><sz val=\"11\"/><name val=\"" + CALIBRI + "\"/></font>")
+                .ascii("</fonts>")
+                .ascii("<fills count=\"").number(fillColours.size() + 2).ascii("\">")
+                .ascii("<fill><patternFill patternType=\"none\"/></fill><fill><patternFill patternType=\"gray125\"/></fill>");
+        for (String fillColour : fillColours) {
+            xml.ascii("<fill><patternFill patternType=\"solid\"><fgColor rgb=\"FF").ascii(fillColour).ascii("\"/></patternFill></fill>");
+        }
+        xml.ascii("</fills>")
+                .ascii("<borders count=\"2\"><border><left/><right/><top/><bottom/><diagonal/></border>")
+                .ascii("<border><left style=\"thin\"/><right style=\"thin\"/><top style=\"thin\"/><bottom style=\"thin\"/>")
+                .ascii("<diagonal/></border></borders>")
+                .ascii("<cellStyleXfs count=\"1\"><xf numFmtId=\"0\" fontId=\"0\" fillId=\"0\" borderId=\"0\"/></cellStyleXfs>")
+                .ascii("<cellXfs count=\"").number(styles.size() + 1).ascii("\">")
+                .ascii("<xf numFmtId=\"0\" fontId=\"0\" fillId=\"0\" borderId=\"0\" xfId=\"0\"/>");
+        for (StyleSpec spec : styles) {
+            int fill = spec.fillColour() == null ? 0 : fillColours.indexOf(spec.fillColour()) + 2;
+            xml.ascii("<xf numFmtId=\"0\" fontId=\"").number(spec.bold() ? 2 : 1).ascii("\" fillId=\"").number(fill)
+                    .ascii("\" borderId=\"").number(spec.bordered() ? 1 : 0)
+                    .ascii("\" xfId=\"0\" applyFont=\"1\" applyFill=\"1\" applyBorder=\"1\" applyAlignment=\"1\">")
+                    .ascii("<alignment horizontal=\"").ascii(alignment(spec.alignment()))
+                    .ascii("\" vertical=\"").ascii(alignment(spec.verticalAlignment()))
+                    .ascii(spec.wrapText() ? "\" wrapText=\"1\"/></xf>" : "\"/></xf>");
+        }
+        xml.ascii("</cellXfs>")
+                .ascii("<cellStyles count=\"1\"><cellStyle name=\"Normal\" xfId=\"0\" builtinId=\"0\"/></cellStyles>")
+                .ascii("</styleSheet>");
+        this.addPart("xl/styles.xml");
+    }
+
+    private void writePart(String name, String content) throws IOException {
+        xml.ascii(content);
+        this.addPart(name);
+    }
+
+    /**
+     * Hands the XML written so far to the pool as the content of the named part, and writes the parts at the head of
+     * the queue once they are deflated.
+     */
+    private ForkJoinTask<DeflatedZipWriter.Entry> addPart(String name) throws IOException {
+        byte[] content = xml.buffer;
+        int length = xml.position;
+        byte[] spareBuffer = spareBuffers.poll();
+        xml.reset(spareBuffer == null ? new byte[BUFFER_SIZE] : spareBuffer);
+        ForkJoinTask<DeflatedZipWriter.Entry> part = pool.submit(() -> {
+            DeflatedZipWriter.Entry entry = zip.deflate(name, content, length);
+            spareBuffers.offer(content);
+            return entry;
+        });
+        this.addPendingPart(part);
+        return part;
+    }
+
+    private void addPendingPart(ForkJoinTask<DeflatedZipWriter.Entry> part) throws IOException {
+        pendingParts.add(part);
+        // parts are written in order, a bounded number of them is kept in memory ahead of the writing
+        while (pendingParts.size() > maxPendingParts) {
+            zip.write(pendingParts.poll().join());
+        }
+    }
+
+    private static String alignment(HorizontalAlignment alignment) {
+        return switch (alignment) {
+            case LEFT -> "left";
+            case CENTER -> "center";
+            case RIGHT -> "right";
+            case FILL -> "fill";
+            case JUSTIFY -> "justify";
+            case CENTER_SELECTION -> "centerContinuous";
+            case DISTRIBUTED -> "distributed";
+            default -> "general";
+        };
+    }
+
+    private static String alignment(VerticalAlignment alignment) {
+        return switch (alignment) {
+            case TOP -> "top";
+            case CENTER -> "center";
+            case JUSTIFY -> "justify";
+            case DISTRIBUTED -> "distributed";
+            default -> "bottom";
+        };
+    }
+
+    /**
+     * Growing UTF-8 buffer holding the XML of one part, so text is encoded without intermediate strings or arrays.
+     */
+    private static class XmlBuffer {
+
+        private static final byte[] DIGITS = "0123456789".getBytes(StandardCharsets.US_ASCII);
+
+        private byte[] buffer = new byte[BUFFER_SIZE];
+        private int position;
+
+        /**
+         * Writes markup as is, it must be ASCII.
+         */
+        XmlBuffer ascii(String markup) {
+            for (int i = 0; i < markup.length(); i++) {
+                this.ensure(1);
+                buffer[position++] = (byte) markup.charAt(i);
+            }
+            return this;
+        }
+
+        /**
+         * Writes character data or an attribute value, escaped. Characters XML cannot carry are written as '?'.
+         */
+        XmlBuffer text(String value) {
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                this.ensure(8);
+                switch (c) {
+                    case '<' -> this.ascii("&lt;");
+                    case '>' -> this.ascii("&gt;");
+                    case '&' -> this.ascii("&amp;");
+                    case '"' -> this.ascii("&quot;");
+                    // kept as is by character references, a raw carriage return would be read as a line feed
+                    case '\r' -> this.ascii("&#xd;");
+                    case '\t', '\n' -> buffer[position++] = (byte) c;
+                    default -> {
+                        if (c < 0x20 || c == 0xFFFE || c == 0xFFFF) {
+                            buffer[position++] = '?';
+                        } else if (c < 0x80) {
+                            buffer[position++] = (byte) c;
+                        } else if (c < 0x800) {
+                            buffer[position++] = (byte) (0xC0 | c >> 6);
+                            buffer[position++] = (byte) (0x80 | c & 0x3F);
+                        } else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                            int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                            buffer[position++] = (byte) (0xF0 | codePoint >> 18);
+                            buffer[position++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+                            buffer[position++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+                            buffer[position++] = (byte) (0x80 | codePoint & 0x3F);
+                        } else if (Character.isSurrogate(c)) {
+                            buffer[position++] = '?';
+                        } else {
+                            buffer[position++] = (byte) (0xE0 | c >> 12);
+                            buffer[position++] = (byte) (0x80 | c >> 6 & 0x3F);
+                            buffer[position++] = (byte) (0x80 | c & 0x3F);
+                        }
+                    }
+                }
+            }
+            return this;
+        }
+
+        XmlBuffer number(long value) {
+            this.ensure(20);
+            if (value < 0) {
+                buffer[position++] = '-';
+                value = -value;
+            }
+            int start = position;
+            do {
+                buffer[position++] = DIGITS[(int) (value % 10)];
+                value /= 10;
+            } while (value > 0);
+            // digits were written least significant first
+            for (int left = start, right = position - 1; left < right; left++, right--) {
+                byte digit = buffer[left];
+                buffer[left] = buffer[right];
+                buffer[right] = digit;
+            }
+            return this;
+        }
+
+        XmlBuffer number(double value) {
+            if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+                return this.number((long) value);
+            }
+            return this.ascii(Double.toString(value));
+        }
+
+        XmlBuffer columnName(int column) {
+            if (column >= 26) {
+                this.columnName(column / 26 - 1);
+            }
+            this.ensure(1);
+            buffer[position++] = (byte) ('A' + column % 26);
+            return this;
+        }
+
+        void reset(byte[] emptyBuffer) {
+            buffer = emptyBuffer;
+            position = 0;
+        }
+
+        private void ensure(int bytes) {
+            if (position + bytes > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + bytes));
+            }
+        }
+    }
+}
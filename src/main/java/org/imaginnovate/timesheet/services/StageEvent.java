@@ -0,0 +1,29 @@
+package org.imaginnovate.timesheet.services;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event covering one stage of a conversion, e.g. parsing the CSV or serializing one workbook.
+ */
+@Name("org.imaginnovate.timesheet.Stage")
+@Label("Conversion Stage")
+@Category({"Time Sheet Formatter"})
+@Description("One stage of a time sheet conversion")
+@StackTrace(false)
+class StageEvent extends jdk.jfr.Event {
+
+    @Label("Stage")
+    String stage;
+
+    @Label("Month")
+    @Description("Month the stage worked on, empty when it covers the whole input")
+    String month;
+
+    @Label("Items")
+    @Description("Rows, employees or sheets handled by the stage")
+    long items;
+}
@@ -0,0 +1,103 @@
+package org.imaginnovate.timesheet.services;
+
+import org.imaginnovate.timesheet.services.EmployeeSheet.DayRow;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Plain text outputs for machine consumers such as payroll and billing jobs, written from the same aggregation as the
+ * report without going through POI.
+ */
+class SummaryExporter {
+
+    private SummaryExporter() {
+    }
+
+    /**
+     * Writes one {@code Month,Name,Hours,Working Days,Leave Days,Utilisation %} line per employee and month, with the
+     * figures of the summary sheet.
+     *
+     * @return the number of employee lines written
+     */
+    static int writeSummaryCsv(List<MonthAggregate> months, Writer out) throws IOException {
+        out.write("Month,Name,Hours,Working Days,Leave Days,Utilisation %\n");
+        int lines = 0;
+        for (MonthAggregate month : months) {
+            if (month.table().getMonth() == null) {
+                continue;
+            }
+            String workingDays = Integer.toString(month.days().getWorkingDays());
+            for (EmployeeSheet employeeSheet : month.employeeSheets()) {
+                double hours = month.employeeNames().get(employeeSheet.getName());
+                out.write(month.table().getMonth().toString());
+                out.write(',');
+                out.write(csvField(employeeSheet.getName()));
+                out.write(',');
+                out.write(Double.toString(hours));
+                out.write(',');
+                out.write(workingDays);
+                out.write(',');
+                out.write(Integer.toString(employeeSheet.getLeaveDays()));
+                out.write(',');
+                out.write(Double.toString(month.days().utilisation(hours)));
+                out.write('\n');
+                lines++;
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * Writes one JSON object per line for every day of every employee sheet, the same rows as the report with ISO
+     * dates. Days without entries have {@code null} hours, weekends and holidays without entries a {@code null} title.
+     *
+     * @return the number of day lines written
+     */
+    static int writeDayJsonLines(List<MonthAggregate> months, Writer out) throws IOException {
+        int lines = 0;
+        for (MonthAggregate month : months) {
+            YearMonth yearMonth = month.table().getMonth();
+            if (yearMonth == null) {
+                continue;
+            }
+            String monthJson = ConversionMetrics.jsonString(yearMonth.toString());
+            for (EmployeeSheet employeeSheet : month.employeeSheets()) {
+                String nameJson = ConversionMetrics.jsonString(employeeSheet.getName());
+                // a sheet has one row per day of the month, in order
+                LocalDate date = yearMonth.atDay(1);
+                for (DayRow dayRow : employeeSheet.getRows()) {
+                    out.write("{\"month\": ");
+                    out.write(monthJson);
+                    out.write(", \"name\": ");
+                    out.write(nameJson);
+                    out.write(", \"date\": \"");
+                    out.write(date.toString());
+                    out.write("\", \"type\": \"");
+                    out.write(dayRow.type().name().toLowerCase(Locale.ROOT));
+                    out.write("\", \"title\": ");
+                    out.write(ConversionMetrics.jsonString(dayRow.title()));
+                    out.write(", \"description\": ");
+                    out.write(ConversionMetrics.jsonString(dayRow.description()));
+                    out.write(", \"hours\": ");
+                    out.write(dayRow.hours() == null ? "null" : Double.toString(dayRow.hours()));
+                    out.write("}\n");
+                    date = date.plusDays(1);
+                    lines++;
+                }
+            }
+        }
+        return lines;
+    }
+
+    private static String csvField(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+}
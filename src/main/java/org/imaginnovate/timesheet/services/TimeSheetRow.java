@@ -0,0 +1,9 @@
+package org.imaginnovate.timesheet.services;
+
+import java.time.LocalDate;
+
+/**
+ * One typed entry of a raw time sheet, with the hours of the day as whole minutes.
+ */
+public record TimeSheetRow(String name, LocalDate date, String title, String description, int minutes) {
+}
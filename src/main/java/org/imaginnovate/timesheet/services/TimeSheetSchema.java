@@ -0,0 +1,195 @@
+package org.imaginnovate.timesheet.services;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+
+/**
+ * Where the fields the converter reads are found in a raw time sheet export. A profile gives, for each field, the
+ * header names it may have, whether it is required and optionally the column to fall back to when none of the names
+ * is in the header. {@link #bind(String[])} resolves a header against the profile once, before any row is read.
+ * <p>
+ * Profiles are properties files, fields left out keep the {@link #DEFAULT} mapping:
+ * <pre>
+ * name.headers=Emp Name|Employee
+ * date.headers=Date|Work Date
+ * title.headers=Title|Task
+ * title.column=5
+ * description.required=false
+ * hours.headers=Total Hours|Hours
+ * </pre>
+ * Header names are matched ignoring case and surrounding spaces, columns are counted from 1.
+ */
+public class TimeSheetSchema {
+
+    /**
+     * The fields of a time sheet row.
+     */
+    public enum Field {
+        NAME("name"),
+        DATE("date"),
+        TITLE("title"),
+        DESCRIPTION("description"),
+        HOURS("hours");
+
+        private final String key;
+
+        Field(String key) {
+            this.key = key;
+        }
+    }
+
+    /**
+     * The layout of the time tracking exports the converter was written for.
+     */
+    public static final TimeSheetSchema DEFAULT = new TimeSheetSchema("default", new FieldMapping[]{
+            new FieldMapping(List.of("Emp Name"), true, 0),
+            new FieldMapping(List.of("Date"), true, 0),
+            new FieldMapping(List.of("Title"), false, 5),
+            new FieldMapping(List.of("Description"), false, 0),
+            new FieldMapping(List.of("Total Hours"), true, 0)});
+
+    private static final String HEADERS = ".headers";
+    private static final String REQUIRED = ".required";
+    private static final String COLUMN = ".column";
+
+    private final String name;
+    private final FieldMapping[] mappings;
+
+    private TimeSheetSchema(String name, FieldMapping[] mappings) {
+        this.name = name;
+        this.mappings = mappings;
+    }
+
+    /**
+     * Reads a mapping profile, named after its file in error messages.
+     */
+    public static TimeSheetSchema load(Path file) throws IOException {
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+        FieldMapping[] mappings = DEFAULT.mappings.clone();
+        for (String key : properties.stringPropertyNames()) {
+            int separator = key.indexOf('.');
+            Field field = separator < 0 ? null : fieldOf(key.substring(0, separator));
+            if (field == null) {
+                throw new IllegalArgumentException("Unknown key " + key + " in schema " + file);
+            }
+            String value = properties.getProperty(key).trim();
+            FieldMapping mapping = mappings[field.ordinal()];
+            mappings[field.ordinal()] = switch (key.substring(separator)) {
+                case HEADERS -> new FieldMapping(Arrays.stream(value.split("\\|")).map(String::trim)
+                        .filter(header -> !header.isEmpty()).toList(), mapping.required(), mapping.column());
+                case REQUIRED -> new FieldMapping(mapping.headers(), Boolean.parseBoolean(value), mapping.column());
+                case COLUMN -> new FieldMapping(mapping.headers(), mapping.required(), columnOf(key, value, file));
+                default -> throw new IllegalArgumentException("Unknown key " + key + " in schema " + file);
+            };
+        }
+        return new TimeSheetSchema(file.getFileName().toString(), mappings);
+    }
+
+    /**
+     * Resolves the column of every field in a header.
+     *
+     * @throws IllegalArgumentException when a required field has no column
+     */
+    public Binding bind(String[] header) {
+        int[] indexes = new int[mappings.length];
+        List<String> missing = new ArrayList<>();
+        for (Field field : Field.values()) {
+            FieldMapping mapping = mappings[field.ordinal()];
+            int index = findColumnIndex(header, mapping.headers());
+            if (index < 0 && mapping.column() > 0) {
+                index = mapping.column() - 1;
+            }
+            if (index < 0 && mapping.required()) {
+                missing.add(mapping.headers().isEmpty() ? field.key : String.join(" or ", mapping.headers()));
+            }
+            indexes[field.ordinal()] = index;
+        }
+        if (!missing.isEmpty()) {
+            throw new IllegalArgumentException("Time sheet has no " + String.join(", ", missing) + " column (schema " + name
+                    + "), its header is " + Arrays.toString(header));
+        }
+        return new Binding(indexes);
+    }
+
+    private static int findColumnIndex(String[] header, List<String> names) {
+        for (int columnIndex = 0; columnIndex < header.length; columnIndex++) {
+            // an empty cell of a spreadsheet header
+            if (header[columnIndex] == null) {
+                continue;
+            }
+            String columnName = header[columnIndex].trim();
+            // a byte order mark left on the first column by a reader that does not strip it
+            if (columnIndex == 0 && columnName.startsWith("\uFEFF")) {
+                columnName = columnName.substring(1).trim();
+            }
+            for (String name : names) {
+                if (columnName.equalsIgnoreCase(name)) {
+                    return columnIndex;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private static Field fieldOf(String key) {
+        for (Field field : Field.values()) {
+            if (field.key.equals(key.toLowerCase(Locale.ROOT))) {
+                return field;
+            }
+        }
+        return null;
+    }
+
+    private static int columnOf(String key, String value, Path file) {
+        try {
+            int column = Integer.parseInt(value);
+            if (column > 0) {
+                return column;
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new IllegalArgumentException("Invalid value for " + key + " in schema " + file + ": " + value);
+    }
+
+    /**
+     * @param column 1-based column used when no header matches, 0 for none
+     */
+    private record FieldMapping(List<String> headers, boolean required, int column) {
+    }
+
+    /**
+     * The column index of every field in one header, {@code -1} for optional fields it does not have.
+     */
+    public static final class Binding {
+
+        private final int[] indexes;
+
+        private Binding(int[] indexes) {
+            this.indexes = indexes;
+        }
+
+        public int indexOf(Field field) {
+            return indexes[field.ordinal()];
+        }
+
+        /**
+         * @return the value of the field in a row, {@code null} when the row is too short or the field has no column
+         */
+        public String valueOf(String[] row, Field field) {
+            int index = indexes[field.ordinal()];
+            return index >= 0 && index < row.length ? row[index] : null;
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package org.imaginnovate.timesheet.services;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.*;
+
+/**
+ * Columnar form of the raw time sheet entries. Employees and texts are dictionary encoded, every row is a few ints
+ * in primitive arrays and hours are kept as whole minutes, so sums stay exact.
+ */
+public class TimeSheetTable {
+
+    public static final int NO_TITLE = -1;
+    private static final int NO_ROW = -1;
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final Map<String, Integer> employeeCodes = new HashMap<>();
+    private final List<String> employeeNames = new ArrayList<>();
+    private final Map<String, Integer> textCodes = new HashMap<>();
+    private final List<String> texts = new ArrayList<>();
+
+    // one entry per row
+    private int[] employees = new int[INITIAL_CAPACITY];
+    private byte[] days = new byte[INITIAL_CAPACITY];
+    private int[] minutes = new int[INITIAL_CAPACITY];
+    private int[] titles = new int[INITIAL_CAPACITY];
+    private int[] descriptions = new int[INITIAL_CAPACITY];
+    // rows of the same employee are chained in input order
+    private int[] nextEmployeeRows = new int[INITIAL_CAPACITY];
+
+    // one entry per employee
+    private int[] firstRows = new int[INITIAL_CAPACITY];
+    private int[] lastRows = new int[INITIAL_CAPACITY];
+    private int[] totalMinutes = new int[INITIAL_CAPACITY];
+    // the minutes counted for each day of month of each employee, 32 entries per employee
+    private int[] dayMinutes = new int[INITIAL_CAPACITY * 32];
+
+    private YearMonth month;
+    private int rowCount;
+
+    public void add(TimeSheetRow row) {
+        LocalDate date = row.date();
+        if (month == null) {
+            month = YearMonth.from(date);
+        }
+        if (rowCount == employees.length) {
+            this.growRows();
+        }
+        int employee = this.employeeCode(row.name());
+        int dayOfMonth = date.getDayOfMonth();
+        int title = NO_TITLE;
+        if (row.title() != null && month.equals(YearMonth.from(date))) {
+            String text = row.title().startsWith("'") ? row.title().substring(1) : row.title();
+            if (!text.isEmpty()) {
+                title = this.textCode(text);
+            }
+        }
+
+        int rowIndex = rowCount++;
+        employees[rowIndex] = employee;
+        days[rowIndex] = (byte) dayOfMonth;
+        minutes[rowIndex] = row.minutes();
+        titles[rowIndex] = title;
+        descriptions[rowIndex] = this.textCode(row.description());
+        nextEmployeeRows[rowIndex] = NO_ROW;
+        if (firstRows[employee] == NO_ROW) {
+            firstRows[employee] = rowIndex;
+        } else {
+            nextEmployeeRows[lastRows[employee]] = rowIndex;
+        }
+        lastRows[employee] = rowIndex;
+
+        // hours are repeated on every entry of the day, the last one counts towards the total as on the employee sheet
+        int day = employee * 32 + dayOfMonth;
+        totalMinutes[employee] += row.minutes() - dayMinutes[day];
+        dayMinutes[day] = row.minutes();
+    }
+
+    public YearMonth getMonth() {
+        return month;
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    public int getEmployeeCount() {
+        return employeeNames.size();
+    }
+
+    public String getEmployeeName(int employee) {
+        return employeeNames.get(employee);
+    }
+
+    /**
+     * @return the employee codes ordered by employee name
+     */
+    public int[] getEmployeesByName() {
+        return employeeCodes.entrySet().stream()
+                .sorted(Map.Entry.comparingByKey())
+                .mapToInt(Map.Entry::getValue)
+                .toArray();
+    }
+
+    public int getTotalMinutes(int employee) {
+        return totalMinutes[employee];
+    }
+
+    /**
+     * @return the minutes of every employee
+     */
+    public long getTotalMinutes() {
+        long total = 0;
+        for (int employee = 0; employee < employeeNames.size(); employee++) {
+            total += totalMinutes[employee];
+        }
+        return total;
+    }
+
+    public TreeMap<String, Double> totalHoursByEmployee() {
+        TreeMap<String, Double> totals = new TreeMap<>();
+        for (int employee = 0; employee < employeeNames.size(); employee++) {
+            totals.put(employeeNames.get(employee), totalMinutes[employee] / 60.0);
+        }
+        return totals;
+    }
+
+    /**
+     * @return the first row of the employee, {@code -1} if there is none
+     */
+    public int getFirstRow(int employee) {
+        return firstRows[employee];
+    }
+
+    /**
+     * @return the next row of the same employee in input order, {@code -1} after the last one
+     */
+    public int getNextRow(int row) {
+        return nextEmployeeRows[row];
+    }
+
+    public int getDayOfMonth(int row) {
+        return days[row];
+    }
+
+    public int getMinutes(int row) {
+        return minutes[row];
+    }
+
+    /**
+     * @return the text code of the row's title, {@link #NO_TITLE} if it has none
+     */
+    public int getTitle(int row) {
+        return titles[row];
+    }
+
+    public int getDescription(int row) {
+        return descriptions[row];
+    }
+
+    public String getText(int textCode) {
+        return texts.get(textCode);
+    }
+
+    private int employeeCode(String name) {
+        Integer code = employeeCodes.get(name);
+        if (code == null) {
+            code = employeeNames.size();
+            if (code == firstRows.length) {
+                this.growEmployees();
+            }
+            employeeCodes.put(name, code);
+            employeeNames.add(name);
+            firstRows[code] = NO_ROW;
+        }
+        return code;
+    }
+
+    private int textCode(String text) {
+        Integer code = textCodes.get(text);
+        if (code == null) {
+            code = texts.size();
+            textCodes.put(text, code);
+            texts.add(text);
+        }
+        return code;
+    }
+
+    private void growRows() {
+        int capacity = employees.length * 2;
+        employees = Arrays.copyOf(employees, capacity);
+        days = Arrays.copyOf(days, capacity);
+        minutes = Arrays.copyOf(minutes, capacity);
+        titles = Arrays.copyOf(titles, capacity);
+        descriptions = Arrays.copyOf(descriptions, capacity);
+        nextEmployeeRows = Arrays.copyOf(nextEmployeeRows, capacity);
+    }
+
+    private void growEmployees() {
+        int capacity = firstRows.length * 2;
+        firstRows = Arrays.copyOf(firstRows, capacity);
+        lastRows = Arrays.copyOf(lastRows, capacity);
+        totalMinutes = Arrays.copyOf(totalMinutes, capacity);
+        dayMinutes = Arrays.copyOf(dayMinutes, capacity * 32);
+    }
+}
@@ -0,0 +1,177 @@
+package org.imaginnovate.timesheet.services;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.DateTimeException;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.MonthDay;
+import java.time.YearMonth;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The working days, weekends and public holidays of every month, computed once per year as bitmaps so the sheets
+ * look a day up with a shift instead of a date calculation.
+ * <p>
+ * Holidays come from local text files, one holiday per line, either on a date or on the same day every year:
+ * <pre>
+ * # comments and blank lines are ignored
+ * 2024-03-25 Holi
+ * 12-25 Christmas
+ * </pre>
+ * A holiday falling on a weekend stays a weekend.
+ */
+public class WorkingDayCalendar {
+
+    /**
+     * Hours of a full working day, the capacity utilisation is measured against.
+     */
+    public static final double DAY_HOURS = 8;
+
+    /**
+     * Saturdays and Sundays off, no holidays.
+     */
+    public static final WorkingDayCalendar DEFAULT = new WorkingDayCalendar(Map.of(), Map.of());
+
+    private final Map<LocalDate, String> holidays;
+    private final Map<MonthDay, String> annualHolidays;
+    private final Map<Integer, MonthDays[]> years = new ConcurrentHashMap<>();
+
+    private WorkingDayCalendar(Map<LocalDate, String> holidays, Map<MonthDay, String> annualHolidays) {
+        this.holidays = holidays;
+        this.annualHolidays = annualHolidays;
+    }
+
+    /**
+     * Reads the holidays of every file, a date listed twice keeps the name of the last one.
+     */
+    public static WorkingDayCalendar load(List<Path> files) throws IOException {
+        Map<LocalDate, String> holidays = new HashMap<>();
+        Map<MonthDay, String> annualHolidays = new HashMap<>();
+        for (Path file : files) {
+            try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                String line;
+                for (int lineNumber = 1; (line = reader.readLine()) != null; lineNumber++) {
+                    line = line.strip();
+                    if (line.isEmpty() || line.startsWith("#")) {
+                        continue;
+                    }
+                    int separator = line.indexOf(' ');
+                    String day = separator < 0 ? line : line.substring(0, separator);
+                    String name = separator < 0 ? "Holiday" : line.substring(separator + 1).strip();
+                    try {
+                        if (day.length() == "MM-dd".length()) {
+                            annualHolidays.put(MonthDay.parse("--" + day), name);
+                        } else {
+                            holidays.put(LocalDate.parse(day), name);
+                        }
+                    } catch (DateTimeException e) {
+                        throw new IllegalArgumentException("Invalid holiday on line " + lineNumber + " of " + file + ": " + line);
+                    }
+                }
+            }
+        }
+        return new WorkingDayCalendar(holidays, annualHolidays);
+    }
+
+    public MonthDays month(YearMonth month) {
+        return years.computeIfAbsent(month.getYear(), this::computeYear)[month.getMonthValue() - 1];
+    }
+
+    private MonthDays[] computeYear(int year) {
+        MonthDays[] months = new MonthDays[12];
+        for (int monthIndex = 0; monthIndex < months.length; monthIndex++) {
+            YearMonth month = YearMonth.of(year, monthIndex + 1);
+            int weekends = 0;
+            int holidayDays = 0;
+            String[] holidayNames = null;
+            for (int dayOfMonth = 1; dayOfMonth <= month.lengthOfMonth(); dayOfMonth++) {
+                LocalDate date = month.atDay(dayOfMonth);
+                DayOfWeek dayOfWeek = date.getDayOfWeek();
+                if (dayOfWeek == DayOfWeek.SATURDAY || dayOfWeek == DayOfWeek.SUNDAY) {
+                    weekends |= 1 << dayOfMonth;
+                    continue;
+                }
+                String name = holidays.get(date);
+                if (name == null) {
+                    name = annualHolidays.get(MonthDay.from(date));
+                }
+                if (name != null) {
+                    holidayDays |= 1 << dayOfMonth;
+                    if (holidayNames == null) {
+                        holidayNames = new String[32];
+                    }
+                    holidayNames[dayOfMonth] = name;
+                }
+            }
+            months[monthIndex] = new MonthDays(month.lengthOfMonth(), weekends, holidayDays, holidayNames);
+        }
+        return months;
+    }
+
+    /**
+     * The days of one month as bitmaps, bit {@code n} standing for day of month {@code n}.
+     */
+    public static final class MonthDays {
+
+        /**
+         * No days at all, for a time sheet without entries and so without a month.
+         */
+        public static final MonthDays NONE = new MonthDays(0, 0, 0, null);
+
+        private final int weekends;
+        private final int holidays;
+        private final int workingDays;
+        private final String[] holidayNames;
+
+        private MonthDays(int length, int weekends, int holidays, String[] holidayNames) {
+            this.weekends = weekends;
+            this.holidays = holidays;
+            // every day of the month, bit 0 is unused
+            this.workingDays = (int) ((1L << (length + 1)) - 2) & ~weekends & ~holidays;
+            this.holidayNames = holidayNames;
+        }
+
+        public boolean isWeekend(int dayOfMonth) {
+            return (weekends >>> dayOfMonth & 1) != 0;
+        }
+
+        public boolean isHoliday(int dayOfMonth) {
+            return (holidays >>> dayOfMonth & 1) != 0;
+        }
+
+        /**
+         * @return the name of a holiday, {@code null} for any other day
+         */
+        public String getHolidayName(int dayOfMonth) {
+            return holidayNames == null ? null : holidayNames[dayOfMonth];
+        }
+
+        public int getWorkingDayBits() {
+            return workingDays;
+        }
+
+        public int getHolidayBits() {
+            return holidays;
+        }
+
+        public int getWorkingDays() {
+            return Integer.bitCount(workingDays);
+        }
+
+        /**
+         * @return the hours as a percentage of the month's working days at {@link #DAY_HOURS} a day, rounded to one
+         * decimal, 0 for a month without working days
+         */
+        public double utilisation(double hours) {
+            int days = this.getWorkingDays();
+            return days == 0 ? 0 : Math.round(hours * 1000 / (days * DAY_HOURS)) / 10.0;
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package org.imaginnovate.timesheet.services;
+
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFComment;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Reads a raw time sheet from the first sheet of an {@code .xlsx} workbook with POI's event model. The sheet XML is
+ * parsed with SAX and each row is handed on as soon as it ends, so memory does not grow with the sheet; only the
+ * shared strings and styles are held.
+ * <p>
+ * Cells are read as their formatted text, except that date cells become {@code MMM d, yyyy} dates and time cells
+ * {@code h:mm} durations, the forms the CSV exports use.
+ */
+public class XlsxTimeSheetReader {
+
+    private static final String EXTENSION = ".xlsx";
+
+    private final CsvTimeSheetReader rowReader;
+    private final TimeSheetSchema schema;
+
+    public XlsxTimeSheetReader(DateDecoder dateDecoder, TimeSheetSchema schema) {
+        this.rowReader = new CsvTimeSheetReader(dateDecoder, schema);
+        this.schema = schema;
+    }
+
+    /**
+     * @return whether the file is read as a workbook rather than as CSV
+     */
+    public static boolean isXlsx(Path file) {
+        return file.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(EXTENSION);
+    }
+
+    public void read(Path file, Consumer<TimeSheetRow> consumer) throws IOException {
+        readRows(file, new Predicate<>() {
+
+            private TimeSheetSchema.Binding binding;
+
+            @Override
+            public boolean test(String[] values) {
+                if (binding == null) {
+                    binding = schema.bind(values);
+                    return true;
+                }
+                TimeSheetRow row = rowReader.toRow(binding.valueOf(values, TimeSheetSchema.Field.NAME),
+                        binding.valueOf(values, TimeSheetSchema.Field.DATE),
+                        binding.valueOf(values, TimeSheetSchema.Field.TITLE),
+                        binding.valueOf(values, TimeSheetSchema.Field.DESCRIPTION),
+                        toDuration(binding.valueOf(values, TimeSheetSchema.Field.HOURS)));
+                if (row != null) {
+                    consumer.accept(row);
+                }
+                return true;
+            }
+        });
+    }
+
+    /**
+     * Streams the cell values of every row of the first sheet, header included, until the consumer returns
+     * {@code false}. Missing cells are {@code null} and a row array ends at its last cell.
+     */
+    public static void readRows(Path file, Predicate<String[]> consumer) throws IOException {
+        OPCPackage workbook;
+        try {
+            workbook = OPCPackage.open(file.toFile(), PackageAccess.READ);
+        } catch (OpenXML4JException | RuntimeException e) {
+            throw new IOException("Invalid time sheet workbook: " + e.getMessage(), e);
+        }
+        try {
+            XSSFReader reader = new XSSFReader(workbook);
+            ReadOnlySharedStringsTable strings = new ReadOnlySharedStringsTable(workbook, false);
+            StylesTable styles = reader.getStylesTable();
+            Iterator<InputStream> sheets = reader.getSheetsData();
+            if (!sheets.hasNext()) {
+                return;
+            }
+            try (InputStream sheet = sheets.next()) {
+                XMLReader xmlReader = XMLHelper.newXMLReader();
+                xmlReader.setContentHandler(new XSSFSheetXMLHandler(styles, strings, new RowCollector(consumer),
+                        new TimeSheetDataFormatter(), false));
+                xmlReader.parse(new InputSource(sheet));
+            }
+        } catch (StopReading e) {
+            // the consumer has seen enough
+        } catch (OpenXML4JException | SAXException | ParserConfigurationException e) {
+            throw new IOException("Invalid time sheet workbook: " + e.getMessage(), e);
+        } finally {
+            // closing would try to save a read-only package
+            workbook.revert();
+        }
+    }
+
+    /**
+     * @return an {@code h:mm} duration for hours written as a plain number, any other value unchanged
+     */
+    private static String toDuration(String hours) {
+        if (hours == null || hours.indexOf(':') >= 0) {
+            return hours;
+        }
+        try {
+            long minutes = Math.round(Double.parseDouble(hours.trim()) * 60);
+            return minutes / 60 + ":" + String.format("%02d", minutes % 60);
+        } catch (NumberFormatException e) {
+            return hours;
+        }
+    }
+
+    /**
+     * Collects the cells of each row into a values array indexed by column.
+     */
+    private static class RowCollector implements XSSFSheetXMLHandler.SheetContentsHandler {
+
+        private final Predicate<String[]> consumer;
+        private String[] values = new String[16];
+        private int width;
+        private int nextColumn;
+
+        RowCollector(Predicate<String[]> consumer) {
+            this.consumer = consumer;
+        }
+
+        @Override
+        public void startRow(int rowNum) {
+            Arrays.fill(values, 0, width, null);
+            width = 0;
+            nextColumn = 0;
+        }
+
+        @Override
+        public void endRow(int rowNum) {
+            if (!consumer.test(Arrays.copyOf(values, width))) {
+                throw new StopReading();
+            }
+        }
+
+        @Override
+        public void cell(String cellReference, String formattedValue, XSSFComment comment) {
+            int column = cellReference == null ? nextColumn : columnOf(cellReference);
+            if (column >= values.length) {
+                values = Arrays.copyOf(values, Math.max(column + 1, values.length * 2));
+            }
+            values[column] = formattedValue;
+            width = Math.max(width, column + 1);
+            nextColumn = column + 1;
+        }
+
+        /**
+         * @return the 0-based column of an {@code A1} style reference
+         */
+        private static int columnOf(String cellReference) {
+            int column = 0;
+            for (int i = 0; i < cellReference.length() && Character.isLetter(cellReference.charAt(i)); i++) {
+                column = column * 26 + Character.toUpperCase(cellReference.charAt(i)) - 'A' + 1;
+            }
+            return column - 1;
+        }
+    }
+
+    /**
+     * Formats date cells as the dates and durations of the CSV exports, leaving the other cells to POI.
+     */
+    private static class TimeSheetDataFormatter extends DataFormatter {
+
+        private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("MMM d, yyyy", Locale.ENGLISH);
+
+        @Override
+        public String formatRawCellContents(double value, int formatIndex, String formatString, boolean use1904Windowing) {
+            if (DateUtil.isADateFormat(formatIndex, formatString) && DateUtil.isValidExcelDate(value)) {
+                // a time of day or an elapsed [h]:mm time is a duration, anything else a date
+                if (value < 1 || formatString.contains("[")) {
+                    long minutes = Math.round(value * 24 * 60);
+                    return minutes / 60 + ":" + String.format("%02d", minutes % 60);
+                }
+                return DateUtil.getLocalDateTime(value, use1904Windowing).toLocalDate().format(DATE_FORMAT);
+            }
+            return super.formatRawCellContents(value, formatIndex, formatString, use1904Windowing);
+        }
+    }
+
+    /**
+     * Unwinds the SAX parse once the consumer stops reading.
+     */
+    private static class StopReading extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        StopReading() {
+            super(null, null, false, false);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package org.imaginnovate.timesheet.watch;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Tab separated record of every export the daemon handled, appended as it goes and kept across restarts:
+ * {@code time, status, sha256, millis, rows, export, report or error}.
+ */
+public class ProcessedLog implements AutoCloseable {
+
+    public static final String CONVERTED = "converted";
+    public static final String DUPLICATE = "duplicate";
+    public static final String FAILED = "failed";
+
+    private static final String HEADER = "# time\tstatus\tsha256\tmillis\trows\texport\treport or error";
+
+    private final Path file;
+    private final BufferedWriter writer;
+
+    public ProcessedLog(Path file) throws IOException {
+        this.file = file;
+        boolean created = Files.notExists(file);
+        this.writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        if (created) {
+            writer.write(HEADER);
+            writer.newLine();
+            writer.flush();
+        }
+    }
+
+    /**
+     * @return the content hashes of every export converted so far
+     */
+    public Set<String> readConvertedHashes() throws IOException {
+        Set<String> hashes = new HashSet<>();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t", 4);
+                if (fields.length == 4 && fields[1].equals(CONVERTED)) {
+                    hashes.add(fields[2]);
+                }
+            }
+        }
+        return hashes;
+    }
+
+    /**
+     * Appends one entry and flushes it, so the log survives the daemon being killed.
+     */
+    public synchronized void append(String status, String hash, long millis, int rows, Path export, String detail) {
+        try {
+            writer.write(String.join("\t", Instant.now().toString(), status, hash == null ? "-" : hash, Long.toString(millis),
+                    Integer.toString(rows), field(export.toString()), field(detail)));
+            writer.newLine();
+            writer.flush();
+        } catch (IOException e) {
+            System.err.println("Unable to write to " + file + " - " + e.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        writer.close();
+    }
+
+    private static String field(String value) {
+        return value == null ? "-" : value.replace('\t', ' ').replace('\r', ' ').replace('\n', ' ');
+    }
+}
@@ -0,0 +1,349 @@
+package org.imaginnovate.timesheet.watch;
+
+import org.imaginnovate.timesheet.cli.ConversionOptions;
+import org.imaginnovate.timesheet.services.FileProcessService;
+import org.imaginnovate.timesheet.services.XlsxTimeSheetReader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Daemon mode converting time sheet exports as soon as they land in the watched directories, one report per export.
+ * <p>
+ * A file is converted once its size and modification time have not changed for {@code --settle-ms}, so exports still
+ * being copied are left alone. An export with the same content as one already converted, under any name, is skipped.
+ * Conversions run on {@code --workers} threads and every handled export is appended to the {@link ProcessedLog},
+ * which also carries the dedupe across restarts. Exports already in the directories at startup are handled the same.
+ * <p>
+ * Usage: {@code --watch <directory>... --out <directory> [--workers <n>] [--settle-ms <n>] [--log <file>]} and the
+ * {@link ConversionOptions}.
+ */
+public class WatchFolderDaemon {
+
+    private static final int DEFAULT_WORKERS = Runtime.getRuntime().availableProcessors();
+    private static final int DEFAULT_SETTLE_MILLIS = 2000;
+    private static final int MAX_SWEEP_MILLIS = 500;
+    private static final String DEFAULT_LOG_NAME = "watch-log.tsv";
+    private static final String USAGE = "Usage: --watch <directory>... --out <directory> [--workers <n>] [--settle-ms <n>] [--log <file>] "
+            + ConversionOptions.FILE_USAGE;
+
+    private final List<Path> directories;
+    private final Path outputDirectory;
+    private final FileProcessService fileProcessService;
+    private final ProcessedLog processedLog;
+    private final long settleNanos;
+    private final long sweepMillis;
+    private final ExecutorService workers;
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> watchedDirectories = new HashMap<>();
+    // only touched by the watching thread
+    private final Map<Path, PendingFile> pending = new HashMap<>();
+    private final Set<Path> converting = ConcurrentHashMap.newKeySet();
+    private final Set<String> convertedHashes = ConcurrentHashMap.newKeySet();
+    // the export each report is written from, so two exports never write or clean up the same report
+    private final Map<Path, Path> reportExports = new ConcurrentHashMap<>();
+
+    /**
+     * @param settleMillis how long a file must stay unchanged before it is converted
+     * @param workers      conversions running at once
+     */
+    public WatchFolderDaemon(List<Path> directories, Path outputDirectory, FileProcessService fileProcessService,
+                             ProcessedLog processedLog, long settleMillis, int workers) throws IOException {
+        this.directories = directories;
+        this.outputDirectory = outputDirectory;
+        this.fileProcessService = fileProcessService;
+        this.processedLog = processedLog;
+        this.settleNanos = TimeUnit.MILLISECONDS.toNanos(settleMillis);
+        this.sweepMillis = Math.max(1, Math.min(settleMillis / 2, MAX_SWEEP_MILLIS));
+        this.workers = Executors.newFixedThreadPool(workers);
+        this.watchService = FileSystems.getDefault().newWatchService();
+        this.convertedHashes.addAll(processedLog.readConvertedHashes());
+    }
+
+    /**
+     * Starts the daemon from the command line arguments following {@code --watch} and watches until the process is
+     * stopped.
+     *
+     * @return the process exit code, non zero when the arguments are invalid or the directories cannot be watched
+     */
+    public static int run(String[] args) {
+        WatchOptions options = new WatchOptions();
+        try {
+            options.parse(args);
+            Files.createDirectories(options.outputDirectory);
+            FileProcessService fileProcessService = new FileProcessService(options.conversionOptions.converter().build());
+            ProcessedLog processedLog = new ProcessedLog(options.logFile == null
+                    ? options.outputDirectory.resolve(DEFAULT_LOG_NAME)
+                    : options.logFile);
+            WatchFolderDaemon daemon = new WatchFolderDaemon(options.directories, options.outputDirectory, fileProcessService,
+                    processedLog, options.settleMillis, options.workers);
+            Runtime.getRuntime().addShutdownHook(new Thread(daemon::stop));
+            daemon.watch();
+            return 0;
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            return 2;
+        } catch (IOException e) {
+            System.err.println("Unable to watch for time sheet exports - " + e.getMessage());
+            return 1;
+        }
+    }
+
+    /**
+     * Watches the directories until {@link #stop()} is called.
+     */
+    public void watch() throws IOException {
+        for (Path directory : directories) {
+            watchedDirectories.put(directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY), directory);
+            this.scan(directory);
+        }
+        System.out.println("Watching " + directories + " for time sheet exports, reports go to " + outputDirectory);
+        try {
+            while (!watchedDirectories.isEmpty()) {
+                WatchKey key = watchService.poll(sweepMillis, TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    this.handleEvents(key);
+                }
+                this.sweep();
+            }
+        } catch (ClosedWatchServiceException | RejectedExecutionException e) {
+            // stopped
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Stops watching and waits for the running conversions to finish, so no report is left half written.
+     */
+    public void stop() {
+        try {
+            watchService.close();
+            workers.shutdown();
+            if (!workers.awaitTermination(1, TimeUnit.MINUTES)) {
+                System.err.println("Conversions still running, stopping anyway");
+            }
+            processedLog.close();
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        System.out.println("Stopped watching for time sheet exports");
+    }
+
+    private void handleEvents(WatchKey key) throws IOException {
+        Path directory = watchedDirectories.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                // events were lost, whatever is in the directory may be new
+                this.scan(directory);
+            } else if (isExport((Path) event.context())) {
+                this.touch(directory.resolve((Path) event.context()));
+            }
+        }
+        if (!key.reset()) {
+            System.err.println("No longer watching " + directory + ", it is gone");
+            watchedDirectories.remove(key);
+        }
+    }
+
+    private void scan(Path directory) throws IOException {
+        try (Stream<Path> entries = Files.list(directory)) {
+            entries.filter(path -> isExport(path.getFileName())).forEach(this::touch);
+        }
+    }
+
+    private void touch(Path file) {
+        pending.computeIfAbsent(file, path -> new PendingFile()).lastChange = System.nanoTime();
+    }
+
+    /**
+     * Hands the files that settled to the workers.
+     */
+    private void sweep() {
+        long now = System.nanoTime();
+        for (Iterator<Map.Entry<Path, PendingFile>> entries = pending.entrySet().iterator(); entries.hasNext(); ) {
+            Map.Entry<Path, PendingFile> entry = entries.next();
+            Path file = entry.getKey();
+            PendingFile pendingFile = entry.getValue();
+            long size;
+            FileTime modified;
+            try {
+                if (!Files.isRegularFile(file)) {
+                    entries.remove();
+                    continue;
+                }
+                size = Files.size(file);
+                modified = Files.getLastModifiedTime(file);
+            } catch (IOException e) {
+                // renamed or deleted while looking at it
+                entries.remove();
+                continue;
+            }
+            if (size != pendingFile.size || !modified.equals(pendingFile.modified)) {
+                pendingFile.size = size;
+                pendingFile.modified = modified;
+                pendingFile.lastChange = now;
+            } else if (now - pendingFile.lastChange >= settleNanos && converting.add(file)) {
+                // a file dropped again while it is being converted waits for that conversion
+                entries.remove();
+                workers.execute(() -> {
+                    try {
+                        this.process(file);
+                    } finally {
+                        converting.remove(file);
+                    }
+                });
+            }
+        }
+    }
+
+    private void process(Path file) {
+        long start = System.nanoTime();
+        String hash;
+        try {
+            hash = sha256(file);
+        } catch (NoSuchFileException e) {
+            return;
+        } catch (IOException e) {
+            System.err.println("Failed to read " + file + " - " + e.getMessage());
+            processedLog.append(ProcessedLog.FAILED, null, elapsedMillis(start), 0, file, e.getMessage());
+            return;
+        }
+        if (!convertedHashes.add(hash)) {
+            System.out.println("Skipping " + file + ", same content as an export already converted");
+            processedLog.append(ProcessedLog.DUPLICATE, hash, elapsedMillis(start), 0, file, null);
+            return;
+        }
+        Path report = outputDirectory.resolve(FileProcessService.reportName(file));
+        Path reportExport = reportExports.putIfAbsent(report, file);
+        if (reportExport != null && !reportExport.equals(file)) {
+            convertedHashes.remove(hash);
+            String error = "its report " + report + " is written from " + reportExport + ", rename the export";
+            System.err.println("Failed to convert " + file + " - " + error);
+            processedLog.append(ProcessedLog.FAILED, hash, elapsedMillis(start), 0, file, error);
+            return;
+        }
+        try {
+            int rows = fileProcessService.convert(file, report);
+            long millis = elapsedMillis(start);
+            System.out.println("Converted " + file + " (" + rows + " rows) in " + millis + " ms");
+            processedLog.append(ProcessedLog.CONVERTED, hash, millis, rows, file, report.toString());
+        } catch (IOException | RuntimeException e) {
+            // dropping the export again retries it
+            convertedHashes.remove(hash);
+            System.err.println("Failed to convert " + file + " - " + e.getMessage());
+            processedLog.append(ProcessedLog.FAILED, hash, elapsedMillis(start), 0, file, e.getMessage());
+        }
+    }
+
+    private static boolean isExport(Path fileName) {
+        String name = fileName.toString();
+        // editors and copy tools write to hidden temporary files first, Excel keeps a ~$ lock file next to open workbooks
+        return !name.startsWith(".") && !name.startsWith("~$")
+                && (name.toLowerCase(Locale.ROOT).endsWith(".csv") || XlsxTimeSheetReader.isXlsx(fileName));
+    }
+
+    private static String sha256(Path file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = Files.newInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static long elapsedMillis(long start) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    /**
+     * Size and modification time of a file when last looked at, and when either last changed.
+     */
+    private static class PendingFile {
+
+        private long size = -1;
+        private FileTime modified;
+        private long lastChange;
+    }
+
+    private static class WatchOptions {
+
+        private final ConversionOptions conversionOptions = new ConversionOptions(true);
+        private final List<Path> directories = new ArrayList<>();
+        private Path outputDirectory;
+        private Path logFile;
+        private int workers = DEFAULT_WORKERS;
+        private int settleMillis = DEFAULT_SETTLE_MILLIS;
+
+        void parse(String[] args) {
+            for (int i = 0; i < args.length; i++) {
+                int last = conversionOptions.parse(args, i);
+                if (last >= 0) {
+                    i = last;
+                    continue;
+                }
+                switch (args[i]) {
+                    case "--out" -> outputDirectory = Paths.get(ConversionOptions.argumentValue(args, ++i));
+                    case "--log" -> logFile = Paths.get(ConversionOptions.argumentValue(args, ++i));
+                    case "--workers" -> workers = ConversionOptions.intArgument(args, ++i, 1);
+                    case "--settle-ms" -> settleMillis = ConversionOptions.intArgument(args, ++i, 0);
+                    default -> directories.add(Paths.get(args[i]));
+                }
+            }
+            if (outputDirectory == null) {
+                throw new IllegalArgumentException("Missing --out <directory>");
+            }
+            if (directories.isEmpty()) {
+                throw new IllegalArgumentException("No directories to watch given");
+            }
+            for (Path directory : directories) {
+                if (!Files.isDirectory(directory)) {
+                    throw new IllegalArgumentException("No such directory: " + directory);
+                }
+                // the summary CSV written there would be picked up as an export
+                if (directory.toAbsolutePath().normalize().equals(outputDirectory.toAbsolutePath().normalize())) {
+                    throw new IllegalArgumentException("--out must not be a watched directory: " + directory);
+                }
+            }
+        }
+    }
+}
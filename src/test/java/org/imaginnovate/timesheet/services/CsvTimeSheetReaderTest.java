@@ -0,0 +1,65 @@
+package org.imaginnovate.timesheet.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class CsvTimeSheetReaderTest {
+
+    private final CsvTimeSheetReader reader = new CsvTimeSheetReader(new DateDecoder());
+
+    @Test
+    void parsesDurations() {
+        assertEquals(510, minutesOf("8:30"));
+        assertEquals(485, minutesOf("8:5"));
+        assertEquals(45, minutesOf(" 0:45 "));
+        assertEquals(600, minutesOf("10:00"));
+    }
+
+    @Test
+    void roundsDecimalDurations() {
+        assertEquals(450, minutesOf("7.5:00"));
+        assertEquals(510, minutesOf("8:30.0"));
+        assertEquals(91, minutesOf("1:30.6"));
+    }
+
+    @Test
+    void countsMalformedDurationsAsZero() {
+        for (String hours : new String[]{"8", "8:", ":30", "8:30:00", "ab:cd", "8h:30", "-1:00", "1.2.3:00", "1e3:00"}) {
+            assertEquals(0, minutesOf(hours), hours);
+        }
+    }
+
+    @Test
+    void skipsRowsWithoutHours() {
+        assertNull(reader.toRow("Ann", "Jan 02, 2024", "Design", "", ""));
+        assertNull(reader.toRow("Ann", "Jan 02, 2024", "Design", "", "  "));
+        assertNull(reader.toRow("Ann", "Jan 02, 2024", "Design", "", null));
+    }
+
+    @Test
+    void readsMalformedHoursWithoutFailingTheReport() throws IOException {
+        String csv = """
+                Emp Code,Emp Name,Project,Date,Title,Description,Total Hours
+                E1,Ann,P1,"Jan 02, 2024",Design,,7.5:00
+                E1,Ann,P1,"Jan 03, 2024",Build,,n/a
+                E1,Ann,P1,"Jan 04, 2024",Build,,
+                """;
+        List<TimeSheetRow> rows = new ArrayList<>();
+        reader.read(new StringReader(csv), rows::add);
+
+        assertEquals(List.of(new TimeSheetRow("Ann", LocalDate.of(2024, 1, 2), "Design", "", 450),
+                new TimeSheetRow("Ann", LocalDate.of(2024, 1, 3), "Build", "", 0)), rows);
+    }
+
+    private int minutesOf(String hours) {
+        return reader.toRow("Ann", "Jan 02, 2024", "Design", "", hours).minutes();
+    }
+}
@@ -0,0 +1,83 @@
+package org.imaginnovate.timesheet.services;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The mapped reader splits a file into chunks tokenized in parallel and must read the same rows as the
+ * {@link CsvTimeSheetReader}, however the chunk boundaries fall.
+ */
+class MappedCsvTimeSheetReaderTest {
+
+    // the smallest chunk the mapped reader splits a file into
+    private static final long CHUNK_SIZE = 4L << 20;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void readsQuotedMultiLineFieldsAcrossChunks() throws IOException {
+        StringBuilder csv = new StringBuilder("Emp Code,Emp Name,Project,Date,Title,Description,Total Hours\r\n");
+        long boundary = CHUNK_SIZE;
+        for (int record = 0; csv.length() < 3 * CHUNK_SIZE + 1000; record++) {
+            csv.append("E").append(record % 7).append(",\"Employee, ").append(record % 7).append("\",P1,\"Jan ")
+                    .append(record % 28 + 1).append(", 2024\",Title ").append(record).append(",\"");
+            // the description runs on past every chunk boundary close ahead, so each boundary splits a quoted
+            // field spanning several lines
+            for (int line = 0; line < 40 || boundary - csv.length() < 200; line++) {
+                csv.append(line % 3 == 0 ? "said \"\"done\"\", then\r\n" : "line " + line + ", more\n");
+                if (csv.length() > boundary + 20) {
+                    boundary += CHUNK_SIZE;
+                }
+            }
+            csv.append("end\",").append(record % 8 + 1).append(":30\r\n");
+        }
+        Path file = directory.resolve("timesheet.csv");
+        Files.writeString(file, csv, StandardCharsets.UTF_8);
+        byte[] bytes = Files.readAllBytes(file);
+        for (long chunkStart = CHUNK_SIZE; chunkStart < bytes.length; chunkStart += CHUNK_SIZE) {
+            assertTrue(isInsideQuotes(bytes, chunkStart), "the chunk at " + chunkStart + " should start inside a quoted field");
+        }
+
+        List<TimeSheetRow> mappedRows = new ArrayList<>();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            new MappedCsvTimeSheetReader(new DateDecoder(), StandardCharsets.UTF_8, pool).read(file, mappedRows::add);
+        } finally {
+            pool.shutdown();
+        }
+        List<TimeSheetRow> rows = new ArrayList<>();
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            new CsvTimeSheetReader(new DateDecoder()).read(reader, rows::add);
+        }
+
+        assertTrue(rows.size() > 1000);
+        assertEquals(rows.size(), mappedRows.size());
+        assertEquals(rows, mappedRows);
+    }
+
+    /**
+     * @return whether the offset is within a quoted field, possibly between the two quotes of an escaped one
+     */
+    private static boolean isInsideQuotes(byte[] bytes, long offset) {
+        boolean inQuotes = false;
+        for (int i = 0; i < offset; i++) {
+            if (bytes[i] == '"') {
+                inQuotes = !inQuotes;
+            }
+        }
+        return inQuotes || bytes[(int) offset - 1] == '"' && bytes[(int) offset] == '"';
+    }
+}
@@ -0,0 +1,87 @@
+package org.imaginnovate.timesheet.services;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.imaginnovate.timesheet.services.ConverterService.OutputEngine;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Reports written by {@link OutputEngine#SPREADSHEETML} open with POI and hold the same sheets and cells as the
+ * {@link OutputEngine#POI} ones.
+ */
+class SpreadsheetMLRoundTripTest {
+
+    private static final String TIME_SHEET = """
+            Emp Code,Emp Name,Project,Date,Title,Description,Total Hours
+            E1,Ann,P1,"Jan 02, 2024",Design,"Reviewed the ""draft"", then
+            fixed it",8:00
+            E1,Ann,P1,"Jan 03, 2024",Build,<Tests & fixes>,4:30
+            E2,Bob,P2,"Jan 02, 2024",Support,,7:15
+            """;
+
+    @Test
+    void opensWithXssfWorkbook() throws IOException {
+        try (XSSFWorkbook workbook = convert(OutputEngine.SPREADSHEETML)) {
+            assertEquals(List.of("Summary", "Ann", "Bob"), sheetNames(workbook));
+
+            Sheet summary = workbook.getSheet("Summary");
+            assertEquals("Ann", summary.getRow(1).getCell(0).getStringCellValue());
+            assertEquals(12.5, summary.getRow(1).getCell(1).getNumericCellValue());
+            assertEquals("Bob", summary.getRow(2).getCell(0).getStringCellValue());
+            assertEquals(7.25, summary.getRow(2).getCell(1).getNumericCellValue());
+            Row totalRow = summary.getRow(4);
+            assertEquals("Total Hours", totalRow.getCell(0).getStringCellValue());
+            assertEquals(19.75, totalRow.getCell(1).getNumericCellValue());
+        }
+    }
+
+    @Test
+    void matchesPoiEngine() throws IOException {
+        try (XSSFWorkbook spreadsheetML = convert(OutputEngine.SPREADSHEETML);
+             XSSFWorkbook poi = convert(OutputEngine.POI)) {
+            assertEquals(sheetNames(poi), sheetNames(spreadsheetML));
+            for (int sheet = 0; sheet < poi.getNumberOfSheets(); sheet++) {
+                assertEquals(cellTexts(poi.getSheetAt(sheet)), cellTexts(spreadsheetML.getSheetAt(sheet)),
+                        poi.getSheetName(sheet));
+            }
+        }
+    }
+
+    private static XSSFWorkbook convert(OutputEngine engine) throws IOException {
+        ConverterService converter = ConverterService.builder().outputEngine(engine).build();
+        ByteArrayOutputStream report = new ByteArrayOutputStream();
+        converter.generateFromCSV(new StringReader(TIME_SHEET), report);
+        return new XSSFWorkbook(new ByteArrayInputStream(report.toByteArray()));
+    }
+
+    private static List<String> sheetNames(XSSFWorkbook workbook) {
+        List<String> names = new ArrayList<>();
+        for (Sheet sheet : workbook) {
+            names.add(sheet.getSheetName());
+        }
+        return names;
+    }
+
+    private static List<String> cellTexts(Sheet sheet) {
+        DataFormatter formatter = new DataFormatter();
+        List<String> texts = new ArrayList<>();
+        for (Row row : sheet) {
+            for (Cell cell : row) {
+                texts.add(cell.getAddress() + "=" + formatter.formatCellValue(cell));
+            }
+        }
+        return texts;
+    }
+}